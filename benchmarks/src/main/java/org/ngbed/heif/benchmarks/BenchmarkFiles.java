@@ -0,0 +1,45 @@
+package org.ngbed.heif.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.ngbed.heif.tools.HeifCorpusGenerator;
+
+/**
+ * Resolves benchmark input names to files. Names ending in <code>.heic</code>
+ * are taken from the bundled <code>sample</code> directory (override with
+ * <code>-Dheif.samples=...</code>); <code>synthetic-N</code> names a file with N
+ * image items and an Exif item, written by {@link HeifCorpusGenerator}.
+ */
+public class BenchmarkFiles
+{
+	private static final String SYNTHETIC_PREFIX = "synthetic-";
+
+	public static Path resolve(String name) throws IOException
+	{
+		if (name.startsWith(SYNTHETIC_PREFIX))
+		{
+			int itemCount = Integer.parseInt(name.substring(SYNTHETIC_PREFIX.length()));
+			Path directory = Files.createTempDirectory("heif-bench");
+			directory.toFile().deleteOnExit();
+			HeifCorpusGenerator generator = new HeifCorpusGenerator();
+			generator.setItemCount(itemCount);
+			generator.setExifSize(4096);
+			Path path = generator.write(directory.resolve(name + ".heic"));
+			path.toFile().deleteOnExit();
+			return path;
+		}
+
+		String samples = System.getProperty("heif.samples");
+		if (samples != null) return Paths.get(samples, name);
+
+		for (String candidate : new String[] { "sample", "../sample" })
+		{
+			Path path = Paths.get(candidate, name);
+			if (Files.exists(path)) return path;
+		}
+		throw new IOException("Cannot find sample " + name + "; set -Dheif.samples to the sample directory");
+	}
+}
@@ -0,0 +1,96 @@
+package org.ngbed.heif.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.ngbed.heif.HeifReader;
+import org.ngbed.heif.boxes.Box;
+import org.ngbed.heif.boxes.FourCC;
+import org.ngbed.heif.boxes.FullBox;
+import org.ngbed.heif.boxes.ItemInfoBox;
+import org.ngbed.heif.boxes.ItemLocationBox;
+import org.ngbed.heif.io.ByteBufferReader;
+import org.ngbed.heif.metadata.HeifBoxHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.drew.metadata.Metadata;
+
+/**
+ * Box parsing from an in-memory copy of each file, so that the numbers reflect
+ * parsing and allocation rather than I/O.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoxParsingBenchmark
+{
+	@Param({ "cheers_1440x960.heic", "fruit_3024x4032.heic", "synthetic-500" })
+	public String input;
+
+	private ByteBufferReader reader;
+	private long itemInfoOffset = -1;
+	private long itemLocationOffset = -1;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		reader = new ByteBufferReader(ByteBuffer.wrap(Files.readAllBytes(BenchmarkFiles.resolve(input))));
+
+		while (reader.getPosition() < reader.getLength())
+		{
+			Box box = new Box(reader);
+			if (box.type == FourCC.META)
+			{
+				new FullBox(reader, box);
+				while (reader.getPosition() < box.offset + box.size)
+				{
+					Box child = new Box(reader);
+					if (child.type == FourCC.IINF) itemInfoOffset = child.offset;
+					if (child.type == FourCC.ILOC) itemLocationOffset = child.offset;
+					reader.seek(child.offset + child.size);
+				}
+			}
+			if (box.size == 0) break;
+			reader.seek(box.offset + box.size);
+		}
+	}
+
+	@Benchmark
+	public Metadata processBoxes() throws IOException
+	{
+		Metadata metadata = new Metadata();
+		reader.seek(0);
+		HeifReader.processBoxes(0, reader, reader.getLength(), new HeifBoxHandler(metadata));
+		return metadata;
+	}
+
+	@Benchmark
+	public ItemInfoBox itemInfoBox() throws IOException
+	{
+		reader.seek(itemInfoOffset);
+		return new ItemInfoBox(reader, new Box(reader));
+	}
+
+	@Benchmark
+	public ItemLocationBox itemLocationBox() throws IOException
+	{
+		reader.seek(itemLocationOffset);
+		return new ItemLocationBox(reader, new Box(reader));
+	}
+}
@@ -0,0 +1,68 @@
+package org.ngbed.heif.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.ngbed.heif.HeifMetadataReader;
+import org.ngbed.heif.HeifQuickInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.drew.metadata.Metadata;
+
+/**
+ * End-to-end {@link HeifMetadataReader#readMetadata} from a file on disk,
+ * through the channel reader (<code>File</code>) and the memory-mapped reader
+ * (<code>Path</code>).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadMetadataBenchmark
+{
+	@Param({ "cheers_1440x960.heic", "fruit_3024x4032.heic", "synthetic-500" })
+	public String input;
+
+	private Path path;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		path = BenchmarkFiles.resolve(input);
+		file = path.toFile();
+	}
+
+	@Benchmark
+	public Metadata readFile() throws IOException
+	{
+		return HeifMetadataReader.readMetadata(file);
+	}
+
+	@Benchmark
+	public Metadata readMapped() throws IOException
+	{
+		return HeifMetadataReader.readMetadata(path);
+	}
+
+	@Benchmark
+	public HeifQuickInfo readQuickInfo() throws IOException
+	{
+		return HeifQuickInfo.read(path);
+	}
+}
@@ -0,0 +1,99 @@
+package org.ngbed.heif.benchmarks;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.ngbed.heif.io.BufferedRandomAccessFileReader;
+import org.ngbed.heif.io.ByteBufferReader;
+import org.ngbed.heif.io.ChannelReader;
+import org.ngbed.heif.io.RandomAccessFileReader;
+import org.ngbed.heif.io.RandomAccessReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sequential {@link RandomAccessReader#getUInt32(long)} over the first 16KB of a
+ * file, the access pattern of box header and item table parsing, for each
+ * reader backend.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderBenchmark
+{
+	private static final int SCAN_LENGTH = 16384;
+
+	@Param({ "file", "buffered", "channel", "mapped" })
+	public String backend;
+
+	@Param({ "fruit_3024x4032.heic" })
+	public String input;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private RandomAccessReader reader;
+	private long scanLength;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		Path path = BenchmarkFiles.resolve(input);
+		if (backend.equals("file"))
+		{
+			file = new RandomAccessFile(path.toFile(), "r");
+			reader = new RandomAccessFileReader(file);
+		}
+		else if (backend.equals("buffered"))
+		{
+			file = new RandomAccessFile(path.toFile(), "r");
+			reader = new BufferedRandomAccessFileReader(file);
+		}
+		else if (backend.equals("channel"))
+		{
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+			reader = new ChannelReader(channel);
+		}
+		else
+		{
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+			reader = ByteBufferReader.map(channel);
+		}
+		scanLength = Math.min(SCAN_LENGTH, reader.getLength()) & ~3L;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		if (file != null) file.close();
+		if (channel != null) channel.close();
+	}
+
+	@Benchmark
+	public long getUInt32() throws IOException
+	{
+		long sum = 0;
+		for (long index = 0; index < scanLength; index += 4)
+		{
+			sum += reader.getUInt32(index);
+		}
+		return sum;
+	}
+}
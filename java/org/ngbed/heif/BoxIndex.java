@@ -0,0 +1,363 @@
+package org.ngbed.heif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.ngbed.heif.boxes.Box;
+import org.ngbed.heif.boxes.BoxParser;
+import org.ngbed.heif.boxes.BoxParserRegistry;
+import org.ngbed.heif.boxes.FourCC;
+import org.ngbed.heif.boxes.ItemPropertyAssociationBox;
+import org.ngbed.heif.io.RandomAccessReader;
+
+import com.drew.metadata.Metadata;
+
+/**
+ * The headers of the boxes of a file, read eagerly, with their payloads parsed
+ * only when first asked for through {@link #getBox(int)}.
+ * <p>
+ * Building the index reads nothing but box headers: the top-level boxes and
+ * the children of <code>meta</code>, <code>iprp</code>, <code>ipco</code>,
+ * <code>dinf</code> and <code>moov</code>. Boxes are numbered in file order,
+ * parents before their children, and the header fields are kept in primitive
+ * arrays. Parsing goes through a {@link BoxParserRegistry}; boxes without a
+ * parser come back as plain headers. The reader must be random access, since
+ * boxes are parsed out of order, and an index is not safe for use by several
+ * threads.
+ */
+public class BoxIndex
+{
+	private static final int MAX_DEPTH = 8;
+	private static final BoxParserRegistry DEFAULT_PARSERS = BoxParserRegistry.createIndexDefault();
+
+	private final RandomAccessReader _reader;
+	private final BoxParserRegistry _parsers;
+	private final Metadata _metadata;
+	private final List<String> _errors = new ArrayList<String>();
+
+	private int _count;
+	private int[] _types = new int[32];
+	private long[] _offsets = new long[32];
+	private long[] _sizes = new long[32];
+	private int[] _depths = new int[32];
+	private int[] _parents = new int[32];
+	private Box[] _boxes;
+
+	private BoxIndex(RandomAccessReader reader, BoxParserRegistry parsers, Metadata metadata)
+	{
+		_reader = reader;
+		_parsers = parsers;
+		_metadata = metadata;
+	}
+
+	/**
+	 * Indexes with the parsers of {@link BoxParserRegistry#createIndexDefault()}.
+	 */
+	public static BoxIndex build(RandomAccessReader reader) throws IOException
+	{
+		return build(reader, DEFAULT_PARSERS, new Metadata());
+	}
+
+	/**
+	 * Indexes the boxes of <code>reader</code>, from offset 0 to its end.
+	 * Malformed or truncated boxes end the index at that level, with an error
+	 * in {@link #getErrors()}.
+	 *
+	 * @param metadata handed to the parsers, for parsers of custom boxes that
+	 *                 add their own directories
+	 */
+	public static BoxIndex build(RandomAccessReader reader, BoxParserRegistry parsers, Metadata metadata)
+			throws IOException
+	{
+		reader.setMotorolaByteOrder(true);
+		BoxIndex index = new BoxIndex(reader, parsers, metadata);
+		index.indexBoxes(0, reader.getLength(), 0, -1);
+		index._boxes = new Box[index._count];
+		return index;
+	}
+
+	private void indexBoxes(long start, long end, int depth, int parent) throws IOException
+	{
+		long position = start;
+		while (position + 8 <= end)
+		{
+			long size = _reader.getUInt32(position);
+			int type = _reader.getInt32(position + 4);
+			int headerSize = 8;
+			if (size == 1)
+			{
+				if (position + 16 > end)
+				{
+					_errors.add(String.format("Box '%s' at offset %d is truncated", FourCC.toString(type), position));
+					return;
+				}
+				size = _reader.getInt64(position + 8);
+				headerSize = 16;
+			}
+			else if (size == 0)
+			{
+				size = end - position;
+			}
+			if (size < headerSize || size > end - position)
+			{
+				_errors.add(String.format("Invalid size %d for box '%s' at offset %d", size, FourCC.toString(type),
+						position));
+				return;
+			}
+
+			int box = add(type, position, size, depth, parent);
+
+			int childrenStart = getChildrenStart(type, headerSize);
+			if (childrenStart != -1)
+			{
+				if (depth + 1 >= MAX_DEPTH)
+				{
+					_errors.add(String.format("Boxes nested deeper than %d at offset %d are not indexed", MAX_DEPTH,
+							position));
+				}
+				else
+				{
+					indexBoxes(position + childrenStart, position + size, depth + 1, box);
+				}
+			}
+			position += size;
+		}
+	}
+
+	/**
+	 * @return the offset of the first child within a container box, or -1 if
+	 *         the box is not indexed as a container
+	 */
+	private static int getChildrenStart(int type, int headerSize)
+	{
+		if (type == FourCC.META) return headerSize + 4;
+		if (type == FourCC.IPRP || type == FourCC.IPCO || type == FourCC.DINF || type == FourCC.MOOV) return headerSize;
+		return -1;
+	}
+
+	private int add(int type, long offset, long size, int depth, int parent)
+	{
+		if (_count == _types.length)
+		{
+			int capacity = _count * 2;
+			_types = Arrays.copyOf(_types, capacity);
+			_offsets = Arrays.copyOf(_offsets, capacity);
+			_sizes = Arrays.copyOf(_sizes, capacity);
+			_depths = Arrays.copyOf(_depths, capacity);
+			_parents = Arrays.copyOf(_parents, capacity);
+		}
+		_types[_count] = type;
+		_offsets[_count] = offset;
+		_sizes[_count] = size;
+		_depths[_count] = depth;
+		_parents[_count] = parent;
+		return _count++;
+	}
+
+	/**
+	 * @return the number of boxes indexed
+	 */
+	public int size()
+	{
+		return _count;
+	}
+
+	/**
+	 * @return the type of box <code>box</code> as a {@link FourCC} code
+	 */
+	public int getType(int box)
+	{
+		checkBox(box);
+		return _types[box];
+	}
+
+	public long getOffset(int box)
+	{
+		checkBox(box);
+		return _offsets[box];
+	}
+
+	public long getSize(int box)
+	{
+		checkBox(box);
+		return _sizes[box];
+	}
+
+	/**
+	 * @return 0 for top-level boxes, 1 for their children, and so on
+	 */
+	public int getDepth(int box)
+	{
+		checkBox(box);
+		return _depths[box];
+	}
+
+	/**
+	 * @return the number of the enclosing box, or -1 for top-level boxes
+	 */
+	public int getParent(int box)
+	{
+		checkBox(box);
+		return _parents[box];
+	}
+
+	/**
+	 * @return the numbers of the children of <code>box</code>, in order
+	 */
+	public int[] getChildren(int box)
+	{
+		checkBox(box);
+
+		int count = 0;
+		int[] children = new int[8];
+		for (int i = box + 1; i < _count && _depths[i] > _depths[box]; i++)
+		{
+			if (_parents[i] != box) continue;
+
+			if (count == children.length) children = Arrays.copyOf(children, count * 2);
+			children[count++] = i;
+		}
+		return Arrays.copyOf(children, count);
+	}
+
+	/**
+	 * @return the bytes of <code>box</code> after its header, as a view where
+	 *         the reader supports one
+	 */
+	public ByteBuffer getPayload(int box) throws IOException
+	{
+		checkBox(box);
+
+		int headerSize = _reader.getUInt32(_offsets[box]) == 1 ? 16 : 8;
+		return _reader.getByteBuffer(_offsets[box] + headerSize, _sizes[box] - headerSize);
+	}
+
+	/**
+	 * @return the reader the index was built over
+	 */
+	public RandomAccessReader getReader()
+	{
+		return _reader;
+	}
+
+	/**
+	 * @return the number of the first box of <code>type</code>, or -1
+	 */
+	public int find(int type)
+	{
+		return find(type, 0);
+	}
+
+	/**
+	 * @return the number of the first box of <code>type</code> from
+	 *         <code>from</code> on, or -1
+	 */
+	public int find(int type, int from)
+	{
+		for (int i = Math.max(0, from); i < _count; i++)
+		{
+			if (_types[i] == type) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses box <code>box</code> on the first call, and returns the same
+	 * instance afterwards. Payloads that fail to parse throw, and are tried
+	 * again on the next call.
+	 *
+	 * @return the parsed box, or a plain {@link Box} with the header fields if
+	 *         its type has no parser
+	 */
+	public Box getBox(int box) throws IOException
+	{
+		checkBox(box);
+		if (_boxes[box] != null) return _boxes[box];
+
+		_reader.seek(_offsets[box]);
+		Box header = new Box(_reader);
+		BoxParser parser = _parsers.get(header.type);
+		_boxes[box] = parser == null ? header : parser.parse(_reader, header, _metadata);
+		return _boxes[box];
+	}
+
+	/**
+	 * @return the first box of <code>type</code>, parsed, or null if there is
+	 *         none
+	 */
+	public Box getBoxOfType(int type) throws IOException
+	{
+		int box = find(type);
+		return box == -1 ? null : getBox(box);
+	}
+
+	/**
+	 * @return the first box of <code>type</code>, parsed, or null if there is
+	 *         none or it does not parse into <code>boxClass</code>
+	 */
+	public <T extends Box> T getBoxOfType(int type, Class<T> boxClass) throws IOException
+	{
+		Box box = getBoxOfType(type);
+		return boxClass.isInstance(box) ? boxClass.cast(box) : null;
+	}
+
+	/**
+	 * @return the first property of <code>itemID</code> of
+	 *         <code>type</code>, parsed, or null if ipma associates none with
+	 *         it or it does not parse into <code>propertyClass</code>
+	 */
+	public <T extends Box> T getItemProperty(long itemID, int type, Class<T> propertyClass) throws IOException
+	{
+		int box = getItemPropertyBox(itemID, type);
+		if (box == -1) return null;
+
+		Box property = getBox(box);
+		return propertyClass.isInstance(property) ? propertyClass.cast(property) : null;
+	}
+
+	/**
+	 * @return the number of the first property box of <code>itemID</code> of
+	 *         <code>type</code>, or -1 if ipma associates none with it
+	 */
+	public int getItemPropertyBox(long itemID, int type) throws IOException
+	{
+		ItemPropertyAssociationBox associations = getBoxOfType(FourCC.IPMA, ItemPropertyAssociationBox.class);
+		int container = find(FourCC.IPCO);
+		if (associations == null || container == -1) return -1;
+
+		int[] properties = getChildren(container);
+		for (int index : associations.getPropertyIndexes(itemID))
+		{
+			if (index < 1 || index > properties.length) continue;
+
+			if (_types[properties[index - 1]] == type) return properties[index - 1];
+		}
+		return -1;
+	}
+
+	/**
+	 * @return true if box <code>box</code> has been parsed
+	 */
+	public boolean isParsed(int box)
+	{
+		checkBox(box);
+		return _boxes[box] != null;
+	}
+
+	/**
+	 * @return the problems met while indexing
+	 */
+	public List<String> getErrors()
+	{
+		return Collections.unmodifiableList(_errors);
+	}
+
+	private void checkBox(int box)
+	{
+		if (box < 0 || box >= _count) throw new IndexOutOfBoundsException("Box: " + box);
+	}
+}
@@ -0,0 +1,19 @@
+package org.ngbed.heif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the undecoded Exif payload of the primary image, set with
+ * {@link ExtractionOptions#setExifPayloadCallback(ExifPayloadCallback)}.
+ */
+public interface ExifPayloadCallback
+{
+	/**
+	 * @param tiffData the Exif data from the TIFF header on, from its position
+	 *                 to its limit. It may be a view of the reader's own
+	 *                 storage, and is only guaranteed to be valid for the
+	 *                 duration of the call.
+	 */
+	void onExifPayload(ByteBuffer tiffData) throws IOException;
+}
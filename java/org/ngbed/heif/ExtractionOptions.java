@@ -0,0 +1,217 @@
+package org.ngbed.heif;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.ngbed.heif.boxes.BoxParserRegistry;
+import org.ngbed.heif.boxes.FourCC;
+
+import com.drew.metadata.heif.HeifDirectory;
+
+/**
+ * Declares which metadata an extraction should produce. By default everything
+ * is extracted.
+ * <p>
+ * Boxes that cannot contribute to anything wanted are skipped without being
+ * parsed, and reading stops as soon as everything wanted has been found, so
+ * that a request for, say, only the image dimensions reads no further than the
+ * meta box. HEIF tags are selected per box: tags set by the same box as a
+ * wanted tag (width and height, or the three file type tags) may be present as
+ * well. Exif, XMP and ICC are all or nothing.
+ */
+public class ExtractionOptions
+{
+	private static final BoxParserRegistry DEFAULT_PARSERS = BoxParserRegistry.createDefault();
+
+	private Set<Integer> heifTags = null;
+	private boolean exifWanted = true;
+	private boolean iccWanted = true;
+	private ExifPayloadCallback exifPayloadCallback = null;
+	private boolean xmpWanted = true;
+	private XmpPayloadCallback xmpPayloadCallback = null;
+	private BoxParserRegistry parsers = null;
+	private BoxParserRegistry effectiveParsers = null;
+
+	/**
+	 * Wants only the given {@link HeifDirectory} tags. No tags at all leaves the
+	 * HEIF directory empty.
+	 */
+	public void setHeifTags(int... tagTypes)
+	{
+		heifTags = new HashSet<Integer>();
+		for (int tagType : tagTypes)
+		{
+			heifTags.add(tagType);
+		}
+		effectiveParsers = null;
+	}
+
+	public void setAllHeifTags()
+	{
+		heifTags = null;
+		effectiveParsers = null;
+	}
+
+	public boolean isHeifTagWanted(int tagType)
+	{
+		return heifTags == null || heifTags.contains(tagType);
+	}
+
+	public void setExifWanted(boolean exifWanted)
+	{
+		this.exifWanted = exifWanted;
+		effectiveParsers = null;
+	}
+
+	public boolean isExifWanted()
+	{
+		return exifWanted;
+	}
+
+	/**
+	 * Hands the raw Exif payload to <code>callback</code>, whether or not Exif
+	 * is also decoded.
+	 */
+	public void setExifPayloadCallback(ExifPayloadCallback callback)
+	{
+		this.exifPayloadCallback = callback;
+		effectiveParsers = null;
+	}
+
+	public ExifPayloadCallback getExifPayloadCallback()
+	{
+		return exifPayloadCallback;
+	}
+
+	/**
+	 * @return true if the Exif item has to be located, to be decoded or handed
+	 *         to the payload callback
+	 */
+	public boolean isExifItemWanted()
+	{
+		return exifWanted || exifPayloadCallback != null;
+	}
+
+	public void setXmpWanted(boolean xmpWanted)
+	{
+		this.xmpWanted = xmpWanted;
+		effectiveParsers = null;
+	}
+
+	public boolean isXmpWanted()
+	{
+		return xmpWanted;
+	}
+
+	/**
+	 * Hands the raw XMP packet to <code>callback</code>, whether or not XMP is
+	 * also decoded. With {@link #setXmpWanted(boolean) XMP decoding} off, the
+	 * packet is never parsed into a DOM.
+	 */
+	public void setXmpPayloadCallback(XmpPayloadCallback callback)
+	{
+		this.xmpPayloadCallback = callback;
+		effectiveParsers = null;
+	}
+
+	public XmpPayloadCallback getXmpPayloadCallback()
+	{
+		return xmpPayloadCallback;
+	}
+
+	/**
+	 * @return true if the XMP item has to be located, to be decoded or handed
+	 *         to the payload callback
+	 */
+	public boolean isXmpItemWanted()
+	{
+		return xmpWanted || xmpPayloadCallback != null;
+	}
+
+	public void setIccWanted(boolean iccWanted)
+	{
+		this.iccWanted = iccWanted;
+		effectiveParsers = null;
+	}
+
+	public boolean isIccWanted()
+	{
+		return iccWanted;
+	}
+
+	/**
+	 * Parses boxes with <code>parsers</code> instead of
+	 * {@link BoxParserRegistry#createDefault() the defaults}. The registry is
+	 * copied when the extraction options remove parsers from it, and must not
+	 * be modified while extraction is running.
+	 */
+	public void setParsers(BoxParserRegistry parsers)
+	{
+		this.parsers = parsers;
+		effectiveParsers = null;
+	}
+
+	/**
+	 * @return true if anything wanted comes from the file type box
+	 */
+	public boolean isFileTypeWanted()
+	{
+		return isHeifTagWanted(HeifDirectory.TAG_MAJOR_BRAND) || isHeifTagWanted(HeifDirectory.TAG_MINOR_VERSION)
+				|| isHeifTagWanted(HeifDirectory.TAG_COMPATIBLE_BRANDS);
+	}
+
+	/**
+	 * @return true if anything wanted comes from the meta box or the items it
+	 *         describes
+	 */
+	public boolean isMetaWanted()
+	{
+		return isExifItemWanted() || isXmpItemWanted() || iccWanted || isItemPropertyWanted();
+	}
+
+	/**
+	 * @return true if anything wanted comes from the properties of the primary
+	 *         item
+	 */
+	public boolean isItemPropertyWanted()
+	{
+		return iccWanted || isHeifTagWanted(HeifDirectory.TAG_IMAGE_WIDTH)
+				|| isHeifTagWanted(HeifDirectory.TAG_IMAGE_HEIGHT) || isHeifTagWanted(HeifDirectory.TAG_IMAGE_ROTATION)
+				|| isHeifTagWanted(HeifDirectory.TAG_BITS_PER_CHANNEL);
+	}
+
+	/**
+	 * @return the registry to parse boxes with, without the parsers of boxes
+	 *         that cannot contribute to anything wanted
+	 */
+	public BoxParserRegistry getParsers()
+	{
+		if (effectiveParsers != null) return effectiveParsers;
+
+		BoxParserRegistry base = parsers == null ? DEFAULT_PARSERS : parsers;
+		if (heifTags == null && exifWanted && xmpWanted && iccWanted) return base;
+
+		BoxParserRegistry registry = new BoxParserRegistry(base);
+
+		if (!isFileTypeWanted()) registry.unregister(FourCC.FTYP);
+		if (!isExifItemWanted() && !isXmpItemWanted())
+		{
+			registry.unregister(FourCC.IINF);
+			registry.unregister(FourCC.ILOC);
+			registry.unregister(FourCC.IDAT);
+		}
+		if (!isItemPropertyWanted())
+		{
+			registry.unregister(FourCC.PITM);
+			registry.unregister(FourCC.IPMA);
+		}
+		if (!isHeifTagWanted(HeifDirectory.TAG_IMAGE_WIDTH) && !isHeifTagWanted(HeifDirectory.TAG_IMAGE_HEIGHT))
+			registry.unregister(FourCC.ISPE);
+		if (!isHeifTagWanted(HeifDirectory.TAG_IMAGE_ROTATION)) registry.unregister(FourCC.IROT);
+		if (!isHeifTagWanted(HeifDirectory.TAG_BITS_PER_CHANNEL)) registry.unregister(FourCC.PIXI);
+		if (!iccWanted) registry.unregister(FourCC.COLR);
+
+		effectiveParsers = registry.size() == base.size() ? base : registry;
+		return effectiveParsers;
+	}
+}
@@ -0,0 +1,21 @@
+package org.ngbed.heif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the coded tiles of a grid image, through
+ * {@link HeifGrid#readTiles(GridTileCallback)}.
+ */
+public interface GridTileCallback
+{
+	/**
+	 * @param tile   the position of the tile in the grid, row by row from the
+	 *               top left
+	 * @param itemID the ID of the tile's item
+	 * @param data   the coded tile, from its position to its limit. It may be a
+	 *               view of the reader's own storage, and is only guaranteed to
+	 *               be valid for the duration of the call.
+	 */
+	void onTile(int tile, long itemID, ByteBuffer data) throws IOException;
+}
@@ -0,0 +1,280 @@
+package org.ngbed.heif;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import com.drew.metadata.Metadata;
+
+/**
+ * Extracts metadata from many files concurrently.
+ * <p>
+ * Work runs on a bounded executor, and at most <code>maxPending</code> files are
+ * queued or in progress at any time: submitting more blocks until a slot frees
+ * up, so arbitrarily large path streams are consumed at the pace of extraction.
+ * A failure reading one file is reported for that file and does not affect the
+ * others.
+ */
+public class HeifBatchExtractor
+{
+	/**
+	 * Receives the outcome of each file, once. Methods are called from worker
+	 * threads, possibly concurrently. Metadata is never null; errors, such as
+	 * running out of memory, and exceptions thrown by the callback itself are
+	 * not reported as failures but left to the worker.
+	 */
+	public interface Callback
+	{
+		void onMetadata(Path path, Metadata metadata);
+
+		void onFailure(Path path, Throwable error);
+	}
+
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final Semaphore pending;
+
+	/**
+	 * Creates an extractor with its own pool of <code>parallelism</code> daemon
+	 * threads, allowing twice that many files to be pending.
+	 */
+	public HeifBatchExtractor(int parallelism)
+	{
+		this(parallelism, parallelism * 2);
+	}
+
+	public HeifBatchExtractor(int parallelism, int maxPending)
+	{
+		this(Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory()), maxPending, true);
+	}
+
+	/**
+	 * Creates an extractor that runs each file on its own virtual thread, for
+	 * I/O-bound scans of network or remote libraries where per-file latency is
+	 * dominated by waiting. <code>maxOpenFiles</code> bounds the files in flight,
+	 * and with them the open descriptors. The readers in
+	 * <code>org.ngbed.heif.io</code> hold no monitors while blocked on I/O, so
+	 * waiting files do not pin carrier threads.
+	 *
+	 * @throws UnsupportedOperationException if the running JVM has no virtual
+	 *                                       threads (before Java 21)
+	 */
+	public static HeifBatchExtractor withVirtualThreads(int maxOpenFiles)
+	{
+		ExecutorService executor;
+		try
+		{
+			executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (NoSuchMethodException e)
+		{
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+		}
+		catch (IllegalAccessException | InvocationTargetException e)
+		{
+			throw new IllegalStateException("Unable to create a virtual thread executor", e);
+		}
+		return new HeifBatchExtractor(executor, maxOpenFiles, true);
+	}
+
+	/**
+	 * Creates an extractor running on <code>executor</code>, which is not shut
+	 * down by {@link #shutdown()}.
+	 */
+	public HeifBatchExtractor(ExecutorService executor, int maxPending)
+	{
+		this(executor, maxPending, false);
+	}
+
+	private HeifBatchExtractor(ExecutorService executor, int maxPending, boolean ownsExecutor)
+	{
+		if (maxPending <= 0) throw new IllegalArgumentException("maxPending must be greater than zero.");
+
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.pending = new Semaphore(maxPending);
+	}
+
+	/**
+	 * Submits a single file, blocking while the extractor is at capacity.
+	 */
+	public CompletionStage<Metadata> submit(final Path path) throws InterruptedException
+	{
+		final CompletableFuture<Metadata> result = new CompletableFuture<Metadata>();
+		submit(path, new Callback()
+		{
+			@Override
+			public void onMetadata(Path path, Metadata metadata)
+			{
+				result.complete(metadata);
+			}
+
+			@Override
+			public void onFailure(Path path, Throwable error)
+			{
+				result.completeExceptionally(error);
+			}
+		}, null);
+		return result;
+	}
+
+	public CompletionStage<Void> extract(final Stream<Path> paths, Callback callback)
+	{
+		return extract(new Iterable<Path>()
+		{
+			@Override
+			public Iterator<Path> iterator()
+			{
+				return paths.iterator();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Extracts metadata from every path, reporting each to
+	 * <code>callback</code>. Paths are consumed on a separate feeder thread, so
+	 * this method returns immediately.
+	 *
+	 * @return completes once every path has been reported, or exceptionally if
+	 *         iterating <code>paths</code> fails
+	 */
+	public CompletionStage<Void> extract(final Iterable<Path> paths, final Callback callback)
+	{
+		final CompletableFuture<Void> done = new CompletableFuture<Void>();
+		// One count for the feeder itself, so that completion waits for it
+		final AtomicInteger outstanding = new AtomicInteger(1);
+
+		Thread feeder = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					for (Path path : paths)
+					{
+						outstanding.incrementAndGet();
+						submit(path, callback, new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								if (outstanding.decrementAndGet() == 0) done.complete(null);
+							}
+						});
+					}
+					if (outstanding.decrementAndGet() == 0) done.complete(null);
+				}
+				catch (Throwable e)
+				{
+					done.completeExceptionally(e);
+				}
+			}
+		}, "heif-batch-feeder");
+		feeder.setDaemon(true);
+		feeder.start();
+
+		return done;
+	}
+
+	/**
+	 * Stops the worker pool, if it was created by this extractor. Files already
+	 * submitted are still processed.
+	 */
+	public void shutdown()
+	{
+		if (ownsExecutor) executor.shutdown();
+	}
+
+	/**
+	 * Reads one file. The default reads through a read-only channel.
+	 */
+	protected Metadata readMetadata(Path path) throws IOException
+	{
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try
+		{
+			return HeifMetadataReader.readMetadata(channel);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	private void submit(final Path path, final Callback callback, final Runnable whenDone)
+			throws InterruptedException
+	{
+		pending.acquire();
+		try
+		{
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						process(path, callback);
+					}
+					finally
+					{
+						pending.release();
+						if (whenDone != null) whenDone.run();
+					}
+				}
+			});
+		}
+		catch (RuntimeException e)
+		{
+			pending.release();
+			throw e;
+		}
+	}
+
+	private void process(Path path, Callback callback)
+	{
+		Metadata metadata;
+		try
+		{
+			metadata = readMetadata(path);
+		}
+		catch (Exception e)
+		{
+			callback.onFailure(path, e);
+			return;
+		}
+		// The reader gives null for structures it cannot make sense of
+		if (metadata == null)
+		{
+			callback.onFailure(path, new IOException("Unable to read HEIF structure of " + path));
+			return;
+		}
+
+		callback.onMetadata(path, metadata);
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "heif-batch-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package org.ngbed.heif;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.ngbed.heif.boxes.FourCC;
+import org.ngbed.heif.boxes.HevcConfigurationBox;
+import org.ngbed.heif.boxes.ItemDataBox;
+import org.ngbed.heif.boxes.ItemInfoBox;
+import org.ngbed.heif.boxes.ItemInfoBox.ItemInfoEntry;
+import org.ngbed.heif.boxes.ItemLocationBox;
+import org.ngbed.heif.boxes.ItemLocationBox.ItemLocation;
+import org.ngbed.heif.boxes.ItemReferenceBox;
+import org.ngbed.heif.boxes.PrimaryItemBox;
+import org.ngbed.heif.io.ByteRange;
+import org.ngbed.heif.io.RandomAccessReader;
+import org.ngbed.heif.io.RangeFetchReader;
+
+/**
+ * The layout of a primary image stored as a <code>grid</code> derived item:
+ * its rows and columns, output size, and the tile items it is built from, in
+ * the order of its <code>dimg</code> references, which is row by row from the
+ * top left.
+ * <p>
+ * Like {@link HeifThumbnail}, the layout is resolved through a
+ * {@link BoxIndex}, and no tile is read until
+ * {@link #readTiles(GridTileCallback)} is called.
+ * <p>
+ * ISO/IEC 23008-12:2017 6.6.2.3
+ */
+public class HeifGrid
+{
+	private long itemID;
+	private int rows;
+	private int columns;
+	private long outputWidth;
+	private long outputHeight;
+	private long[] tileItemIDs;
+	private ItemLocation[] tileLocations;
+	private ItemDataReader[] tileData;
+	private RandomAccessReader reader;
+	private BoxIndex index;
+
+	private HeifGrid()
+	{
+	}
+
+	/**
+	 * @return the layout of the primary image, or null if it is not a grid
+	 */
+	public static HeifGrid read(Path imagePath) throws IOException
+	{
+		return read(HeifMetadataReader.readBoxIndex(imagePath));
+	}
+
+	/**
+	 * @return the layout of the primary image, or null if it is not a grid
+	 * @throws IOException if the grid's payload is malformed, or the number of
+	 *                     tiles does not match it
+	 */
+	public static HeifGrid read(BoxIndex index) throws IOException
+	{
+		PrimaryItemBox primaryItemBox = index.getBoxOfType(FourCC.PITM, PrimaryItemBox.class);
+		ItemInfoBox itemInfoBox = index.getBoxOfType(FourCC.IINF, ItemInfoBox.class);
+		if (primaryItemBox == null || itemInfoBox == null) return null;
+
+		ItemInfoEntry entry = itemInfoBox.getEntry(primaryItemBox.getItemID());
+		if (entry == null || entry.itemType != FourCC.GRID) return null;
+
+		ItemLocationBox itemLocationBox = index.getBoxOfType(FourCC.ILOC, ItemLocationBox.class);
+		ItemReferenceBox itemReferenceBox = index.getBoxOfType(FourCC.IREF, ItemReferenceBox.class);
+		ItemDataBox itemDataBox = index.getBoxOfType(FourCC.IDAT, ItemDataBox.class);
+		if (itemLocationBox == null || itemReferenceBox == null)
+			throw new IOException("Grid item " + entry.itemID + " has no location or no tiles");
+
+		HeifGrid grid = new HeifGrid();
+		grid.itemID = entry.itemID;
+		grid.reader = index.getReader();
+		grid.index = index;
+		grid.readImageGrid(itemLocationBox.getLocation(entry.itemID), itemDataBox);
+
+		grid.tileItemIDs = itemReferenceBox.getReferences(FourCC.DIMG, entry.itemID);
+		if (grid.tileItemIDs.length != grid.rows * grid.columns) throw new IOException(String.format(
+				"Grid item %d is %dx%d tiles but refers to %d", entry.itemID, grid.columns, grid.rows,
+				grid.tileItemIDs.length));
+
+		grid.tileLocations = new ItemLocation[grid.tileItemIDs.length];
+		grid.tileData = new ItemDataReader[grid.tileItemIDs.length];
+		for (int i = 0; i < grid.tileItemIDs.length; i++)
+		{
+			grid.tileLocations[i] = itemLocationBox.getLocation(grid.tileItemIDs[i]);
+			if (grid.tileLocations[i] != null)
+			{
+				grid.tileData[i] = ItemDataReader.create(grid.reader, grid.tileLocations[i], itemDataBox);
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * Reads the ImageGrid payload of the grid item, which is usually kept in
+	 * idat.
+	 */
+	private void readImageGrid(ItemLocation location, ItemDataBox itemDataBox) throws IOException
+	{
+		ItemDataReader data = location == null ? null : ItemDataReader.create(reader, location, itemDataBox);
+		if (data == null) throw new IOException("The data of grid item " + itemID + " cannot be located");
+		if (data.getLength() < 8) throw new IOException("Invalid grid item " + itemID);
+
+		int version = data.getUInt8(0);
+		if (version != 0) throw new IOException("Unsupported grid item version " + version);
+
+		boolean wideFields = (data.getUInt8(1) & 1) == 1;
+		rows = data.getUInt8(2) + 1;
+		columns = data.getUInt8(3) + 1;
+		if (wideFields)
+		{
+			if (data.getLength() < 12) throw new IOException("Invalid grid item " + itemID);
+			outputWidth = data.getUInt32(4);
+			outputHeight = data.getUInt32(8);
+		}
+		else
+		{
+			outputWidth = data.getUInt16(4);
+			outputHeight = data.getUInt16(6);
+		}
+	}
+
+	/**
+	 * Hands every tile to <code>callback</code>, in the order the tiles lie in
+	 * the file, so that the reader moves forward only. A {@link RangeFetchReader}
+	 * is first asked for all the tiles in one coalesced batch.
+	 *
+	 * @throws IOException if a tile's data cannot be located in the file
+	 */
+	public void readTiles(GridTileCallback callback) throws IOException
+	{
+		Integer[] order = new Integer[tileData.length];
+		final long[] offsets = new long[tileData.length];
+		for (int i = 0; i < tileData.length; i++)
+		{
+			if (tileData[i] == null)
+				throw new IOException("The data of tile item " + tileItemIDs[i] + " cannot be located");
+
+			order[i] = i;
+			offsets[i] = tileData[i].getRunOffset(0);
+		}
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return Long.compare(offsets[a], offsets[b]);
+			}
+		});
+
+		if (reader instanceof RangeFetchReader)
+		{
+			((RangeFetchReader) reader).prefetch(getByteRanges(), RangeReadPlanner.DEFAULT_MAX_GAP);
+		}
+
+		for (int tile : order)
+		{
+			ItemDataReader data = tileData[tile];
+			callback.onTile(tile, tileItemIDs[tile], data.getByteBuffer(0, data.getLength()));
+		}
+	}
+
+	public long getItemID()
+	{
+		return itemID;
+	}
+
+	public int getRows()
+	{
+		return rows;
+	}
+
+	public int getColumns()
+	{
+		return columns;
+	}
+
+	/**
+	 * @return the width of the reconstructed image, which the tiles may exceed
+	 *         on the right
+	 */
+	public long getOutputWidth()
+	{
+		return outputWidth;
+	}
+
+	/**
+	 * @return the height of the reconstructed image, which the tiles may exceed
+	 *         at the bottom
+	 */
+	public long getOutputHeight()
+	{
+		return outputHeight;
+	}
+
+	public int getTileCount()
+	{
+		return tileItemIDs.length;
+	}
+
+	/**
+	 * @param tile the position of the tile, row by row from the top left
+	 */
+	public long getTileItemID(int tile)
+	{
+		return tileItemIDs[tile];
+	}
+
+	/**
+	 * @return the tile's entry in iloc, or null
+	 */
+	public ItemLocation getTileLocation(int tile)
+	{
+		return tileLocations[tile];
+	}
+
+	/**
+	 * @return a reader over the coded tile, or null if its data cannot be
+	 *         located in the file
+	 */
+	public ItemDataReader getTileData(int tile)
+	{
+		return tileData[tile];
+	}
+
+	/**
+	 * Parses the tile's hvcC property on first use; tiles usually share one.
+	 *
+	 * @return the tile's decoder configuration, with its parameter sets, or
+	 *         null if it is not HEVC
+	 */
+	public HevcConfigurationBox getTileHevcConfiguration(int tile) throws IOException
+	{
+		return index.getItemProperty(tileItemIDs[tile], FourCC.HVCC, HevcConfigurationBox.class);
+	}
+
+	/**
+	 * @return the ranges of the file holding the tile, with adjacent extents
+	 *         merged
+	 */
+	public List<ByteRange> getTileByteRanges(int tile)
+	{
+		if (tileData[tile] == null) return Collections.emptyList();
+
+		return tileData[tile].getByteRanges();
+	}
+
+	/**
+	 * @return the ranges of the file holding all the tiles, in file order
+	 */
+	public List<ByteRange> getByteRanges()
+	{
+		List<ByteRange> ranges = new ArrayList<ByteRange>();
+		for (int i = 0; i < tileData.length; i++)
+		{
+			ranges.addAll(getTileByteRanges(i));
+		}
+		Collections.sort(ranges, new Comparator<ByteRange>()
+		{
+			@Override
+			public int compare(ByteRange a, ByteRange b)
+			{
+				return Long.compare(a.offset, b.offset);
+			}
+		});
+		return ranges;
+	}
+}
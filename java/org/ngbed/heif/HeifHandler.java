@@ -3,6 +3,8 @@ package org.ngbed.heif;
 import java.io.IOException;
 
 import org.ngbed.heif.boxes.Box;
+import org.ngbed.heif.boxes.BoxParser;
+import org.ngbed.heif.boxes.BoxParserRegistry;
 import org.ngbed.heif.io.RandomAccessReader;
 
 import com.drew.metadata.Metadata;
@@ -12,18 +14,56 @@ public abstract class HeifHandler
 {
 	protected Metadata metadata;
 	protected HeifDirectory directory;
+	protected ExtractionOptions options;
+	protected BoxParserRegistry parsers;
 
 	public HeifHandler(Metadata metadata)
+	{
+		this(metadata, null);
+	}
+
+	/**
+	 * @param options what to extract, or null for everything
+	 */
+	public HeifHandler(Metadata metadata, ExtractionOptions options)
 	{
 		this.metadata = metadata;
 		this.directory = new HeifDirectory();
 		this.metadata.addDirectory(directory);
+		this.options = options == null ? new ExtractionOptions() : options;
+		this.parsers = this.options.getParsers();
 	}
 
-	protected abstract boolean shouldAcceptBox(Box box);
+	public ExtractionOptions getOptions()
+	{
+		return options;
+	}
+
+	/**
+	 * @return the parser for <code>box</code>, or null to skip it. By default
+	 *         every box type with a registered parser is read.
+	 */
+	protected BoxParser getParser(Box box)
+	{
+		return parsers.get(box.type);
+	}
 
 	protected abstract boolean shouldAcceptContainer(Box box);
 
+	/**
+	 * Called after each box. Returning true stops reading at this level, before
+	 * the end of the enclosing box or stream is reached.
+	 *
+	 * @return true once everything wanted from this level has been found
+	 */
+	protected boolean isSatisfied(RandomAccessReader reader)
+	{
+		return false;
+	}
+
+	/**
+	 * Receives a box as returned by its {@link BoxParser}.
+	 */
 	protected abstract void processBox(int depth, Box box, RandomAccessReader reader) throws IOException;
 
 	/**
@@ -2,9 +2,21 @@ package org.ngbed.heif;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.zip.DataFormatException;
 
+import org.ngbed.heif.boxes.BoxParserRegistry;
+import org.ngbed.heif.io.ByteBufferReader;
+import org.ngbed.heif.io.ChannelReader;
+import org.ngbed.heif.io.RandomAccessReader;
+import org.ngbed.heif.io.RangeFetcher;
+import org.ngbed.heif.io.SequentialStreamReader;
 import org.ngbed.heif.metadata.HeifBoxHandler;
 
 import com.drew.metadata.Metadata;
@@ -14,15 +26,163 @@ public class HeifMetadataReader
 
 	public static Metadata readMetadata(File imageFile) throws IOException
 	{
-		RandomAccessFile streamFile = new RandomAccessFile(imageFile, "rw");
+		return HeifMetadataReader.readMetadata(imageFile, null);
+	}
+
+	public static Metadata readMetadata(File imageFile, ExtractionOptions options) throws IOException
+	{
+		FileChannel channel = FileChannel.open(imageFile.toPath(), StandardOpenOption.READ);
 		try
 		{
-			return HeifMetadataReader.readMetadata(streamFile, streamFile.length());
+			return HeifMetadataReader.readMetadata(new ChannelReader(channel), options);
 		}
 		finally
 		{
-			streamFile.close();
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads metadata from an open, readable channel. The channel is neither
+	 * repositioned (when it is a {@link FileChannel}) nor closed.
+	 */
+	public static Metadata readMetadata(SeekableByteChannel channel) throws IOException
+	{
+		return HeifMetadataReader.readMetadata(new ChannelReader(channel));
+	}
+
+	/**
+	 * Reads metadata from a memory-mapped view of <code>imagePath</code>.
+	 */
+	public static Metadata readMetadata(Path imagePath) throws IOException
+	{
+		return HeifMetadataReader.readMetadata(map(imagePath));
+	}
+
+	/**
+	 * Locates the Exif item of the primary image without decoding it.
+	 *
+	 * @return the Exif data from the TIFF header on, or null if there is no
+	 *         Exif item. Unlike the buffer handed to an
+	 *         {@link ExifPayloadCallback}, it stays valid: it is a read-only view
+	 *         of a memory-mapped view of <code>imagePath</code>, which lives as
+	 *         long as the view, or an owned copy if the item is split.
+	 */
+	public static ByteBuffer readExifPayload(Path imagePath) throws IOException
+	{
+		final ByteBuffer[] payload = new ByteBuffer[1];
+
+		ExtractionOptions options = new ExtractionOptions();
+		options.setHeifTags();
+		options.setExifWanted(false);
+		options.setXmpWanted(false);
+		options.setIccWanted(false);
+		options.setExifPayloadCallback(new ExifPayloadCallback()
+		{
+			@Override
+			public void onExifPayload(ByteBuffer tiffData)
+			{
+				// Kept past the call, which only a mapped reader allows
+				payload[0] = tiffData;
+			}
+		});
+		HeifMetadataReader.readMetadata(map(imagePath), options);
+		return payload[0];
+	}
+
+	/**
+	 * Locates the XMP item of the file without parsing it.
+	 *
+	 * @return the XMP packet, or null if there is no XMP item. Unlike the
+	 *         buffer handed to an {@link XmpPayloadCallback}, it stays valid: it
+	 *         is a read-only view of a memory-mapped view of
+	 *         <code>imagePath</code>, which lives as long as the view, or an
+	 *         owned copy if the item is split.
+	 */
+	public static ByteBuffer readXmpPayload(Path imagePath) throws IOException
+	{
+		final ByteBuffer[] payload = new ByteBuffer[1];
+
+		ExtractionOptions options = new ExtractionOptions();
+		options.setHeifTags();
+		options.setExifWanted(false);
+		options.setXmpWanted(false);
+		options.setIccWanted(false);
+		options.setXmpPayloadCallback(new XmpPayloadCallback()
+		{
+			@Override
+			public void onXmpPayload(ByteBuffer xmpPacket)
+			{
+				// Kept past the call, which only a mapped reader allows
+				payload[0] = xmpPacket;
+			}
+		});
+		HeifMetadataReader.readMetadata(map(imagePath), options);
+		return payload[0];
+	}
+
+	/**
+	 * Indexes the boxes of a memory-mapped view of <code>imagePath</code>,
+	 * parsing none of them until asked.
+	 */
+	public static BoxIndex readBoxIndex(Path imagePath) throws IOException
+	{
+		return HeifReader.index(map(imagePath));
+	}
+
+	/**
+	 * Reads metadata from a stream in a single forward pass, without buffering
+	 * the image data. Only the Exif item is retained while the stream passes
+	 * over it, and no more than <code>maxRetainedBytes</code> are held at any
+	 * time. The stream is not closed.
+	 */
+	public static Metadata readMetadata(InputStream inputStream, long maxRetainedBytes) throws IOException
+	{
+		return HeifMetadataReader.readMetadata(new SequentialStreamReader(inputStream, maxRetainedBytes));
+	}
+
+	/**
+	 * Reads metadata from a remote object, fetching only the ranges planned by
+	 * {@link RangeReadPlanner}.
+	 */
+	public static Metadata readMetadata(RangeFetcher fetcher) throws IOException
+	{
+		return HeifMetadataReader.readMetadata(RangeReadPlanner.plan(fetcher));
+	}
+
+	public static Metadata readMetadata(RandomAccessReader reader) throws IOException
+	{
+		return HeifMetadataReader.readMetadata(reader, (ExtractionOptions) null);
+	}
+
+	/**
+	 * Reads metadata, parsing only the box types registered in
+	 * <code>parsers</code>.
+	 */
+	public static Metadata readMetadata(RandomAccessReader reader, BoxParserRegistry parsers) throws IOException
+	{
+		ExtractionOptions options = new ExtractionOptions();
+		options.setParsers(parsers);
+		return HeifMetadataReader.readMetadata(reader, options);
+	}
+
+	/**
+	 * Reads only the metadata wanted by <code>options</code>, stopping as soon
+	 * as all of it has been found.
+	 */
+	public static Metadata readMetadata(RandomAccessReader reader, ExtractionOptions options) throws IOException
+	{
+		try
+		{
+			Metadata metadata = new Metadata();
+			HeifReader.extract(metadata, reader, reader.getLength(), new HeifBoxHandler(metadata, options));
+			return metadata;
+		}
+		catch (DataFormatException e)
+		{
+			e.printStackTrace();
 		}
+		return null;
 	}
 
 	public static Metadata readMetadata(RandomAccessFile streamFile, long streamLength) throws IOException
@@ -39,4 +199,17 @@ public class HeifMetadataReader
 		}
 		return null;
 	}
+
+	private static ByteBufferReader map(Path imagePath) throws IOException
+	{
+		FileChannel channel = FileChannel.open(imagePath, StandardOpenOption.READ);
+		try
+		{
+			return ByteBufferReader.map(channel);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
 }
@@ -0,0 +1,377 @@
+package org.ngbed.heif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.ngbed.heif.boxes.FourCC;
+
+/**
+ * The brands, primary item, dimensions and rotation of a HEIF file, read
+ * without building any {@link com.drew.metadata.Metadata}.
+ * <p>
+ * The start of the file is read once, and <code>meta</code> is parsed in place
+ * when it fits; otherwise <code>meta</code> is read with one more read of
+ * exactly its size. No item data is touched and nothing is decoded beyond the
+ * fields below. Width and height come from the <code>ispe</code> property and
+ * rotation from the <code>irot</code> property associated with the primary
+ * item.
+ */
+public class HeifQuickInfo
+{
+	public static final int DEFAULT_HEAD_SIZE = 4096;
+	public static final int MAX_META_SIZE = 1 << 20;
+
+	private String majorBrand;
+	private String[] compatibleBrands;
+	private long primaryItemID;
+	private long itemCount;
+	private long width;
+	private long height;
+	private int rotation;
+
+	private HeifQuickInfo()
+	{
+	}
+
+	public static HeifQuickInfo read(Path imagePath) throws IOException
+	{
+		FileChannel channel = FileChannel.open(imagePath, StandardOpenOption.READ);
+		try
+		{
+			return read(channel);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads from an open channel, which is not closed. A {@link FileChannel} is
+	 * read with positional reads, and so is not repositioned.
+	 */
+	public static HeifQuickInfo read(SeekableByteChannel channel) throws IOException
+	{
+		long length = channel.size();
+		ByteBuffer head = read(channel, 0, (int) Math.min(length, DEFAULT_HEAD_SIZE));
+		return scan(head, length, channel);
+	}
+
+	/**
+	 * Reads from a buffer holding the start of a file, from its position to its
+	 * limit, which must include the whole <code>meta</code> box.
+	 */
+	public static HeifQuickInfo read(ByteBuffer buffer) throws IOException
+	{
+		ByteBuffer head = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+		return scan(head, head.limit(), null);
+	}
+
+	public String getMajorBrand()
+	{
+		return majorBrand;
+	}
+
+	public String[] getCompatibleBrands()
+	{
+		return compatibleBrands;
+	}
+
+	/**
+	 * @return the ID of the primary item, or 0 if there is no pitm box
+	 */
+	public long getPrimaryItemID()
+	{
+		return primaryItemID;
+	}
+
+	/**
+	 * @return the number of items in iinf
+	 */
+	public long getItemCount()
+	{
+		return itemCount;
+	}
+
+	/**
+	 * @return the width of the primary item, or 0 if it has no ispe property
+	 */
+	public long getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * @return the height of the primary item, or 0 if it has no ispe property
+	 */
+	public long getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * @return the anti-clockwise rotation of the primary item in degrees: 0,
+	 *         90, 180 or 270
+	 */
+	public int getRotation()
+	{
+		return rotation;
+	}
+
+	/**
+	 * Walks the top-level boxes up to <code>meta</code>. <code>head</code>
+	 * holds the start of the file; anything beyond it is read from
+	 * <code>channel</code>, if there is one.
+	 */
+	private static HeifQuickInfo scan(ByteBuffer head, long length, SeekableByteChannel channel) throws IOException
+	{
+		HeifQuickInfo info = new HeifQuickInfo();
+
+		long offset = 0;
+		while (offset + 8 <= length)
+		{
+			ByteBuffer buffer = head;
+			int position = (int) offset;
+			if (offset + Math.min(16, length - offset) > head.limit())
+			{
+				buffer = readBeyondHead(channel, offset, (int) Math.min(16, length - offset));
+				position = 0;
+			}
+
+			long size = buffer.getInt(position) & 0xFFFFFFFFL;
+			int type = buffer.getInt(position + 4);
+			int headerSize = 8;
+			if (size == 1)
+			{
+				if (buffer.limit() < position + 16) break;
+				size = buffer.getLong(position + 8);
+				headerSize = 16;
+			}
+			else if (size == 0)
+			{
+				size = length - offset;
+			}
+			if (size < headerSize || offset + size > length) throw new IOException(String.format(
+					"Invalid size %d for box '%s' at offset %d", size, FourCC.toString(type), offset));
+
+			if (type == FourCC.FTYP || type == FourCC.META)
+			{
+				if (size > MAX_META_SIZE) throw new IOException(
+						String.format("The %s box is larger than %d bytes", FourCC.toString(type), MAX_META_SIZE));
+
+				ByteBuffer box = head;
+				int start = (int) offset;
+				if (offset + size > head.limit())
+				{
+					box = readBeyondHead(channel, offset, (int) size);
+					start = 0;
+				}
+
+				if (type == FourCC.FTYP)
+				{
+					info.readFileType(box, start + headerSize, start + (int) size);
+				}
+				else
+				{
+					if (info.majorBrand == null) break;
+					info.readMeta(box, start + headerSize, start + (int) size);
+					return info;
+				}
+			}
+			offset += size;
+		}
+
+		if (info.majorBrand == null) throw new IOException("Not a HEIF file: no ftyp box at the start");
+		throw new IOException("No meta box found");
+	}
+
+	private void readFileType(ByteBuffer buffer, int start, int end) throws IOException
+	{
+		if (end - start < 8) throw new IOException("Invalid ftyp box");
+
+		majorBrand = FourCC.toString(buffer.getInt(start));
+		compatibleBrands = new String[(end - start - 8) / 4];
+		for (int i = 0; i < compatibleBrands.length; i++)
+		{
+			compatibleBrands[i] = FourCC.toString(buffer.getInt(start + 8 + i * 4));
+		}
+	}
+
+	private void readMeta(ByteBuffer buffer, int start, int end) throws IOException
+	{
+		int itemPropertiesStart = -1;
+		int itemPropertiesEnd = -1;
+		int associationsStart = -1;
+		int associationsEnd = -1;
+
+		// meta is a full box: skip version and flags
+		int position = start + 4;
+		while (position + 8 <= end)
+		{
+			int size = checkedSize(buffer, position, end);
+			int type = buffer.getInt(position + 4);
+			if (type == FourCC.PITM)
+			{
+				primaryItemID = readVersionedValue(buffer, position, size);
+			}
+			else if (type == FourCC.IINF)
+			{
+				itemCount = readVersionedValue(buffer, position, size);
+			}
+			else if (type == FourCC.IPRP)
+			{
+				int child = position + 8;
+				while (child + 8 <= position + size)
+				{
+					int childSize = checkedSize(buffer, child, position + size);
+					int childType = buffer.getInt(child + 4);
+					if (childType == FourCC.IPCO)
+					{
+						itemPropertiesStart = child + 8;
+						itemPropertiesEnd = child + childSize;
+					}
+					else if (childType == FourCC.IPMA && associationsStart == -1)
+					{
+						associationsStart = child + 8;
+						associationsEnd = child + childSize;
+					}
+					child += childSize;
+				}
+			}
+			position += size;
+		}
+
+		if (itemPropertiesStart != -1 && associationsStart != -1)
+		{
+			readPrimaryItemProperties(buffer, itemPropertiesStart, itemPropertiesEnd, associationsStart, associationsEnd);
+		}
+	}
+
+	/**
+	 * Finds the primary item's entry in ipma and applies the ispe and irot
+	 * properties it refers to.
+	 */
+	private void readPrimaryItemProperties(ByteBuffer buffer, int propertiesStart, int propertiesEnd,
+			int associationsStart, int associationsEnd) throws IOException
+	{
+		if (associationsStart + 8 > associationsEnd) throw new IOException("Invalid ipma box");
+
+		int version = buffer.get(associationsStart);
+		boolean wideIndexes = (buffer.get(associationsStart + 3) & 1) == 1;
+		long entryCount = buffer.getInt(associationsStart + 4) & 0xFFFFFFFFL;
+
+		int position = associationsStart + 8;
+		int entrySize = version < 1 ? 3 : 5;
+		for (long i = 0; i < entryCount && position + entrySize <= associationsEnd; i++)
+		{
+			long itemID;
+			if (version < 1)
+			{
+				itemID = buffer.getShort(position) & 0xFFFF;
+				position += 2;
+			}
+			else
+			{
+				itemID = buffer.getInt(position) & 0xFFFFFFFFL;
+				position += 4;
+			}
+			int associationCount = buffer.get(position++) & 0xFF;
+			int associationSize = wideIndexes ? 2 : 1;
+			if (position + associationCount * associationSize > associationsEnd) break;
+
+			if (itemID == primaryItemID)
+			{
+				for (int j = 0; j < associationCount; j++)
+				{
+					int index = wideIndexes ? buffer.getShort(position + j * 2) & 0x7FFF
+							: buffer.get(position + j) & 0x7F;
+					readProperty(buffer, propertiesStart, propertiesEnd, index);
+				}
+				return;
+			}
+			position += associationCount * associationSize;
+		}
+	}
+
+	/**
+	 * Reads the property at the 1-based <code>index</code> in ipco, if it is one
+	 * of ispe or irot.
+	 */
+	private void readProperty(ByteBuffer buffer, int start, int end, int index) throws IOException
+	{
+		if (index == 0) return;
+
+		int position = start;
+		for (int i = 1; i < index && position + 8 <= end; i++)
+		{
+			position += checkedSize(buffer, position, end);
+		}
+		if (position + 8 > end) return;
+
+		int size = checkedSize(buffer, position, end);
+		int type = buffer.getInt(position + 4);
+		if (type == FourCC.ISPE && size >= 20)
+		{
+			width = buffer.getInt(position + 12) & 0xFFFFFFFFL;
+			height = buffer.getInt(position + 16) & 0xFFFFFFFFL;
+		}
+		else if (type == FourCC.IROT && size >= 9)
+		{
+			rotation = (buffer.get(position + 8) & 0x03) * 90;
+		}
+	}
+
+	/**
+	 * Reads the first field of a full box, which is 16 bits wide in version 0
+	 * and 32 bits wide otherwise, as in pitm and iinf.
+	 */
+	private static long readVersionedValue(ByteBuffer buffer, int position, int size) throws IOException
+	{
+		if (size < 12) throw new IOException(String.format("Invalid '%s' box", FourCC.toString(buffer.getInt(position + 4))));
+
+		int version = buffer.get(position + 8);
+		if (size < (version == 0 ? 14 : 16))
+			throw new IOException(String.format("Invalid '%s' box", FourCC.toString(buffer.getInt(position + 4))));
+
+		return version == 0 ? buffer.getShort(position + 12) & 0xFFFF : buffer.getInt(position + 12) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * @return the size of the box at <code>position</code>, which must be a
+	 *         32-bit size that ends within <code>end</code>
+	 */
+	private static int checkedSize(ByteBuffer buffer, int position, int end) throws IOException
+	{
+		long size = buffer.getInt(position) & 0xFFFFFFFFL;
+		if (size < 8 || position + size > end) throw new IOException(String.format(
+				"Invalid size %d for box '%s' in meta", size, FourCC.toString(buffer.getInt(position + 4))));
+		return (int) size;
+	}
+
+	private static ByteBuffer readBeyondHead(SeekableByteChannel channel, long offset, int length) throws IOException
+	{
+		if (channel == null) throw new IOException(String.format("Data at offset %d is beyond the buffer", offset));
+
+		return read(channel, offset, length);
+	}
+
+	private static ByteBuffer read(SeekableByteChannel channel, long offset, int length) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		if (!(channel instanceof FileChannel)) channel.position(offset);
+		while (buffer.hasRemaining())
+		{
+			int bytesRead = channel instanceof FileChannel
+					? ((FileChannel) channel).read(buffer, offset + buffer.position())
+					: channel.read(buffer);
+			if (bytesRead < 0) throw new IOException("Unexpected end of file encountered.");
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
@@ -1,66 +1,145 @@
 package org.ngbed.heif;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.zip.DataFormatException;
 
 import org.ngbed.heif.boxes.Box;
-import org.ngbed.heif.io.RandomAccessFileReader;
+import org.ngbed.heif.boxes.BoxParser;
+import org.ngbed.heif.boxes.FourCC;
+import org.ngbed.heif.io.BufferedRandomAccessFileReader;
 import org.ngbed.heif.io.RandomAccessReader;
 
+import com.drew.lang.BufferBoundsException;
 import com.drew.metadata.Metadata;
 
 public class HeifReader
 {
+	private static final int BOX_HEADER_SIZE = 8;
+
 //	public final static String[] ZERO_PADDINGS =
 //	{ "", "  -->", "    -->" };
 
 	public static void extract(Metadata metadata, RandomAccessFile streamFile, long streamLength, HeifHandler handler)
 			throws IOException, DataFormatException
 	{
-		RandomAccessFileReader reader = new RandomAccessFileReader(streamFile);
+		extract(metadata, new BufferedRandomAccessFileReader(streamFile), streamLength, handler);
+	}
+
+	public static void extract(Metadata metadata, RandomAccessReader reader, long streamLength, HeifHandler handler)
+			throws IOException, DataFormatException
+	{
 		reader.setMotorolaByteOrder(true);
 		processBoxes(0, reader, streamLength, handler);
 	}
 
+	/**
+	 * Reads the headers of the boxes of <code>reader</code> into an index, and
+	 * leaves their payloads to be parsed on demand. Unlike extraction, this
+	 * needs a random access reader.
+	 */
+	public static BoxIndex index(RandomAccessReader reader) throws IOException
+	{
+		return BoxIndex.build(reader);
+	}
+
+	/**
+	 * Reads boxes from the current position up to <code>atomEnd</code>, or up to
+	 * the end of the stream when <code>atomEnd</code> is -1, and then calls
+	 * {@link HeifHandler#processCompleted}.
+	 * <p>
+	 * Malformed or truncated boxes end the loop with an error on the handler's
+	 * directory. Other failures of the underlying source are thrown.
+	 */
 	public static void processBoxes(int depth, RandomAccessReader reader, long atomEnd, HeifHandler handler)
+			throws IOException
 	{
 		try
 		{
-			while ((atomEnd == -1) ? true : reader.getPosition() < atomEnd)
+			while (hasBoxHeader(reader, atomEnd))
 			{
-
 				Box box = new Box(reader);
+				BoxParser parser;
 				// Determine if fourCC is container/atom and process accordingly
 				// Unknown atoms will be skipped
 
+				if (!box.isLastBox() && box.size < box.countBytesRead)
+				{
+					handler.directory.addError(String.format("Invalid size %d for box '%s' at offset %d", box.size,
+							FourCC.toString(box.type), box.offset));
+					break;
+				}
+				if (atomEnd != -1 && box.offset + box.size > atomEnd)
+				{
+					handler.directory.addError(String.format("Box '%s' at offset %d extends beyond the end at %d",
+							FourCC.toString(box.type), box.offset, atomEnd));
+					break;
+				}
+
 				if (handler.shouldAcceptContainer(box))
 				{
 //					System.out.println(ZERO_PADDINGS[depth] + "box[acceptContainer] -->" + box);
 					handler.processContainer(depth, box, reader);
 				}
-				else if (handler.shouldAcceptBox(box))
+				else if ((parser = handler.getParser(box)) != null)
 				{
 //					System.out.println(ZERO_PADDINGS[depth] + "box[acceptBox] -->" + box);
-					handler.processBox(depth, box, reader);
+					handler.processBox(depth, parser.parse(reader, box, handler.metadata), reader);
+					if (box.size > 0)
+					{
+						// Sequential streams cannot go back, so a parser that read
+						// into the next box ends the loop on every reader alike
+						if (reader.getPosition() > box.offset + box.size)
+						{
+							handler.directory.addError(String.format("Box '%s' at offset %d overruns its size of %d bytes",
+									FourCC.toString(box.type), box.offset, box.size));
+							break;
+						}
+						reader.seek(box.offset + box.size);
+					}
 				}
 				else if (box.size > 0)
 				{
 //					System.out.println(ZERO_PADDINGS[depth] + "box[Unknown] -->" + box);
-					reader.skip(box.size - box.countBytesRead);
+					if (!reader.trySkip(box.size - box.countBytesRead))
+					{
+						handler.directory.addError(String.format("Box '%s' at offset %d is truncated",
+								FourCC.toString(box.type), box.offset));
+						break;
+					}
 				}
 				else
 				{
 					break;
 				}
+
+				if (handler.isSatisfied(reader)) break;
 			}
+		}
+		catch (BufferBoundsException | EOFException e)
+		{
+			handler.directory.addError(e.getMessage());
+		}
 
+		try
+		{
 			handler.processCompleted(depth, reader);
-
 		}
-		catch (IOException e)
+		catch (BufferBoundsException | EOFException e)
 		{
-			// Currently, reader relies on IOException to end
+			handler.directory.addError(e.getMessage());
 		}
 	}
+
+	/**
+	 * @return true if a box header fits before <code>atomEnd</code>, or before
+	 *         the end of the stream when <code>atomEnd</code> is -1
+	 */
+	private static boolean hasBoxHeader(RandomAccessReader reader, long atomEnd) throws IOException
+	{
+		if (atomEnd == -1) return reader.canRead(BOX_HEADER_SIZE);
+
+		return reader.getPosition() + BOX_HEADER_SIZE <= atomEnd;
+	}
 }
@@ -0,0 +1,197 @@
+package org.ngbed.heif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.ngbed.heif.boxes.FourCC;
+import org.ngbed.heif.boxes.HevcConfigurationBox;
+import org.ngbed.heif.boxes.ImageSpatialExtentsProperty;
+import org.ngbed.heif.boxes.ItemDataBox;
+import org.ngbed.heif.boxes.ItemInfoBox;
+import org.ngbed.heif.boxes.ItemInfoBox.ItemInfoEntry;
+import org.ngbed.heif.boxes.ItemLocationBox;
+import org.ngbed.heif.boxes.ItemLocationBox.ItemLocation;
+import org.ngbed.heif.boxes.ItemReferenceBox;
+import org.ngbed.heif.boxes.PrimaryItemBox;
+import org.ngbed.heif.io.ByteRange;
+
+/**
+ * A thumbnail of the primary image: an item with a <code>thmb</code>
+ * reference to it in <code>iref</code>.
+ * <p>
+ * Everything is located through a {@link BoxIndex}, so only the item tables
+ * and properties are parsed, and the coded thumbnail itself is not read: it is
+ * described by its decoder configuration and the byte ranges holding it, and
+ * can be read through {@link #getData()}.
+ */
+public class HeifThumbnail
+{
+	private long itemID;
+	private int itemType;
+	private long masterItemID;
+	private long width;
+	private long height;
+	private ItemLocation location;
+	private ByteBuffer decoderConfig;
+	private HevcConfigurationBox hevcConfiguration;
+	private ItemDataReader data;
+
+	private HeifThumbnail()
+	{
+	}
+
+	/**
+	 * @return the first thumbnail of the primary image, or null if it has none
+	 */
+	public static HeifThumbnail read(Path imagePath) throws IOException
+	{
+		return read(HeifMetadataReader.readBoxIndex(imagePath));
+	}
+
+	/**
+	 * @return the first thumbnail of the primary image, or null if it has none
+	 */
+	public static HeifThumbnail read(BoxIndex index) throws IOException
+	{
+		List<HeifThumbnail> thumbnails = readAll(index);
+		return thumbnails.isEmpty() ? null : thumbnails.get(0);
+	}
+
+	/**
+	 * @return the thumbnails of the primary image, in the order of iref
+	 */
+	public static List<HeifThumbnail> readAll(BoxIndex index) throws IOException
+	{
+		PrimaryItemBox primaryItemBox = index.getBoxOfType(FourCC.PITM, PrimaryItemBox.class);
+		ItemReferenceBox itemReferenceBox = index.getBoxOfType(FourCC.IREF, ItemReferenceBox.class);
+		if (primaryItemBox == null || itemReferenceBox == null) return Collections.emptyList();
+
+		long[] itemIDs = itemReferenceBox.getReferencingItems(FourCC.THMB, primaryItemBox.getItemID());
+		if (itemIDs.length == 0) return Collections.emptyList();
+
+		ItemInfoBox itemInfoBox = index.getBoxOfType(FourCC.IINF, ItemInfoBox.class);
+		ItemLocationBox itemLocationBox = index.getBoxOfType(FourCC.ILOC, ItemLocationBox.class);
+		ItemDataBox itemDataBox = index.getBoxOfType(FourCC.IDAT, ItemDataBox.class);
+
+		List<HeifThumbnail> thumbnails = new ArrayList<HeifThumbnail>(itemIDs.length);
+		for (long itemID : itemIDs)
+		{
+			HeifThumbnail thumbnail = new HeifThumbnail();
+			thumbnail.itemID = itemID;
+			thumbnail.masterItemID = primaryItemBox.getItemID();
+
+			ItemInfoEntry entry = itemInfoBox == null ? null : itemInfoBox.getEntry(itemID);
+			if (entry != null) thumbnail.itemType = entry.itemType;
+
+			thumbnail.location = itemLocationBox == null ? null : itemLocationBox.getLocation(itemID);
+			if (thumbnail.location != null)
+			{
+				thumbnail.data = ItemDataReader.create(index.getReader(), thumbnail.location, itemDataBox);
+			}
+
+			ImageSpatialExtentsProperty extents = index.getItemProperty(itemID, FourCC.ISPE,
+					ImageSpatialExtentsProperty.class);
+			if (extents != null)
+			{
+				thumbnail.width = extents.getWidth();
+				thumbnail.height = extents.getHeight();
+			}
+			thumbnail.hevcConfiguration = index.getItemProperty(itemID, FourCC.HVCC, HevcConfigurationBox.class);
+			int decoderConfig = index.getItemPropertyBox(itemID, FourCC.HVCC);
+			if (decoderConfig == -1) decoderConfig = index.getItemPropertyBox(itemID, FourCC.AV1C);
+			if (decoderConfig != -1) thumbnail.decoderConfig = index.getPayload(decoderConfig);
+
+			thumbnails.add(thumbnail);
+		}
+		return thumbnails;
+	}
+
+	public long getItemID()
+	{
+		return itemID;
+	}
+
+	/**
+	 * @return the item type as a {@link FourCC} code, such as
+	 *         <code>hvc1</code>, or 0 if unknown
+	 */
+	public int getItemType()
+	{
+		return itemType;
+	}
+
+	/**
+	 * @return the ID of the image the thumbnail is of
+	 */
+	public long getMasterItemID()
+	{
+		return masterItemID;
+	}
+
+	/**
+	 * @return the width from the thumbnail's ispe property, or 0
+	 */
+	public long getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * @return the height from the thumbnail's ispe property, or 0
+	 */
+	public long getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * @return the thumbnail's entry in iloc, or null
+	 */
+	public ItemLocation getLocation()
+	{
+		return location;
+	}
+
+	/**
+	 * @return the payload of the thumbnail's hvcC (or av1C) property, the
+	 *         decoder configuration record, or null if it has none
+	 */
+	public ByteBuffer getDecoderConfig()
+	{
+		return decoderConfig == null ? null : decoderConfig.duplicate();
+	}
+
+	/**
+	 * @return the thumbnail's hvcC property, parsed, or null if it is not HEVC
+	 */
+	public HevcConfigurationBox getHevcConfiguration()
+	{
+		return hevcConfiguration;
+	}
+
+	/**
+	 * @return the ranges of the file holding the coded thumbnail, in item
+	 *         order, with adjacent extents merged; empty if its data cannot be
+	 *         located in the file
+	 */
+	public List<ByteRange> getByteRanges()
+	{
+		if (data == null) return Collections.emptyList();
+
+		return data.getByteRanges();
+	}
+
+	/**
+	 * @return a reader over the coded thumbnail, which reads from the file
+	 *         only as it is read, or null if its data cannot be located in the
+	 *         file
+	 */
+	public ItemDataReader getData()
+	{
+		return data;
+	}
+}
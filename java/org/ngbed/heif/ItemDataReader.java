@@ -0,0 +1,320 @@
+package org.ngbed.heif;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ngbed.heif.boxes.ItemDataBox;
+import org.ngbed.heif.boxes.ItemLocationBox.ItemLocation;
+import org.ngbed.heif.io.ByteRange;
+import org.ngbed.heif.io.ByteRangeCallback;
+import org.ngbed.heif.io.RandomAccessReader;
+
+import com.drew.lang.BufferBoundsException;
+
+/**
+ * The data of one item, as a single stream over its extents: index 0 is the
+ * first byte of the first extent, and reads that cross from one extent into the
+ * next are served from both.
+ * <p>
+ * Extents are resolved against the item's base offset, in the file for
+ * construction method 0 and in <code>idat</code> for construction method 1.
+ * Extents that follow each other in the source are coalesced into one run, so
+ * the common case of an item split into contiguous extents reads as one range.
+ * Nothing is copied up front: each read is passed on to the source reader,
+ * whose position it moves.
+ * <p>
+ * ISO/IEC 14496-12:2015 pg.77-80
+ */
+public class ItemDataReader extends RandomAccessReader
+{
+	private final RandomAccessReader _source;
+	/** The offset in the source of each run */
+	private final long[] _runOffsets;
+	/** The index in the item of each run, followed by the length of the item */
+	private final long[] _runStarts;
+	private final int _runCount;
+	private long _currentIndex;
+
+	private ItemDataReader(RandomAccessReader source, long[] runOffsets, long[] runStarts, int runCount)
+	{
+		_source = source;
+		_runOffsets = runOffsets;
+		_runStarts = runStarts;
+		_runCount = runCount;
+	}
+
+	/**
+	 * @param itemData the idat box of the same meta box, or null if there is none
+	 * @return a reader over the item's data, or null if the data cannot be
+	 *         located in <code>source</code>: it is in another file, it is built
+	 *         from other items (construction method 2), it is in a missing or
+	 *         too short idat box, an extent runs past the end of the source, or
+	 *         the item has no extents
+	 */
+	public static ItemDataReader create(RandomAccessReader source, ItemLocation location, ItemDataBox itemData)
+			throws IOException
+	{
+		if (location.getDataReferenceIndex() != 0) return null;
+
+		long dataOffset;
+		long dataLength;
+		if (location.getConstructionMethod() == 0)
+		{
+			dataOffset = 0;
+			dataLength = source.getLength();
+		}
+		else if (location.getConstructionMethod() == 1 && itemData != null)
+		{
+			dataOffset = itemData.getDataOffset();
+			dataLength = itemData.getDataLength();
+		}
+		else
+		{
+			return null;
+		}
+
+		int extentCount = location.getExtentCount();
+		if (extentCount == 0) return null;
+
+		long[] runOffsets = new long[extentCount];
+		long[] runStarts = new long[extentCount + 1];
+		int runCount = 0;
+		long itemLength = 0;
+		long baseOffset = location.getBaseOffset();
+
+		for (int i = 0; i < extentCount; i++)
+		{
+			long start = baseOffset + location.getExtentOffset(i);
+			long length = location.getExtentLength(i);
+			if (length == 0)
+			{
+				// The extent runs to the end of the file or of idat
+				if (dataLength < 0) return null;
+				length = dataLength - start;
+			}
+			if (start < 0 || length < 0) return null;
+			// Sources of unknown length, such as streams, are checked as they are read
+			if (dataLength >= 0 && start + length > dataLength) return null;
+
+			long offset = dataOffset + start;
+			if (runCount > 0 && runEnd(runOffsets, runStarts, runCount, itemLength) == offset)
+			{
+				itemLength += length;
+				continue;
+			}
+			runOffsets[runCount] = offset;
+			runStarts[runCount] = itemLength;
+			runCount++;
+			itemLength += length;
+		}
+		runStarts[runCount] = itemLength;
+
+		return new ItemDataReader(source, runOffsets, runStarts, runCount);
+	}
+
+	private static long runEnd(long[] runOffsets, long[] runStarts, int runCount, long itemLength)
+	{
+		return runOffsets[runCount - 1] + itemLength - runStarts[runCount - 1];
+	}
+
+	/**
+	 * @return the number of separate ranges the item is read from, after
+	 *         adjacent extents are coalesced
+	 */
+	public int getRunCount()
+	{
+		return _runCount;
+	}
+
+	/**
+	 * @return the offset in the source of run <code>run</code>
+	 */
+	public long getRunOffset(int run)
+	{
+		if (run < 0 || run >= _runCount) throw new IndexOutOfBoundsException("Run: " + run);
+		return _runOffsets[run];
+	}
+
+	public long getRunLength(int run)
+	{
+		if (run < 0 || run >= _runCount) throw new IndexOutOfBoundsException("Run: " + run);
+		return _runStarts[run + 1] - _runStarts[run];
+	}
+
+	/**
+	 * @return the ranges of the source the item is read from, in item order
+	 */
+	public List<ByteRange> getByteRanges()
+	{
+		List<ByteRange> ranges = new ArrayList<ByteRange>(_runCount);
+		for (int i = 0; i < _runCount; i++)
+		{
+			ranges.add(new ByteRange(_runOffsets[i], _runStarts[i + 1] - _runStarts[i]));
+		}
+		return ranges;
+	}
+
+	/**
+	 * @return the offset in the source of <code>index</code> in the item
+	 */
+	public long getSourceOffset(long index) throws IOException
+	{
+		validateIndex(index, 0);
+
+		int run = findRun(index);
+		return _runOffsets[run] + index - _runStarts[run];
+	}
+
+	@Override
+	public long getLength()
+	{
+		return _runStarts[_runCount];
+	}
+
+	@Override
+	public byte getByte(long index) throws IOException
+	{
+		validateIndex(index, 1);
+
+		_currentIndex = index + 1;
+		int run = findRun(index);
+		return _source.getByte(_runOffsets[run] + index - _runStarts[run]);
+	}
+
+	@Override
+	public byte[] getBytes(long index, long count) throws IOException
+	{
+		validateIndex(index, count);
+
+		int run = findRun(index);
+		long offset = _runOffsets[run] + index - _runStarts[run];
+		_currentIndex = index + count;
+		if (index + count <= _runStarts[run + 1]) return _source.getBytes(offset, count);
+
+		byte[] bytes = new byte[(int) count];
+		int filled = 0;
+		while (filled < count)
+		{
+			long available = _runStarts[run + 1] - (index + filled);
+			int length = (int) Math.min(available, count - filled);
+			System.arraycopy(_source.getBytes(offset, length), 0, bytes, filled, length);
+			filled += length;
+			run++;
+			if (run < _runCount) offset = _runOffsets[run];
+		}
+		return bytes;
+	}
+
+	/**
+	 * Bytes within one run are a view from the source, where it has one; only
+	 * bytes spanning runs are copied.
+	 */
+	@Override
+	public ByteBuffer getByteBuffer(long index, long count) throws IOException
+	{
+		validateIndex(index, count);
+
+		int run = findRun(index);
+		if (index + count > _runStarts[run + 1]) return super.getByteBuffer(index, count);
+
+		_currentIndex = index + count;
+		return _source.getByteBuffer(_runOffsets[run] + index - _runStarts[run], count);
+	}
+
+	/**
+	 * Bytes within one run are requested from the source, so that sequential
+	 * sources deliver them once they are reached. Bytes spanning runs are read
+	 * at once.
+	 */
+	@Override
+	public boolean readBytesDeferred(final long index, long count, final ByteRangeCallback callback)
+			throws IOException
+	{
+		validateIndex(index, count);
+
+		int run = findRun(index);
+		if (index + count > _runStarts[run + 1]) return super.readBytesDeferred(index, count, callback);
+
+		return _source.readBytesDeferred(_runOffsets[run] + index - _runStarts[run], count, new ByteRangeCallback()
+		{
+			@Override
+			public void onBytes(long sourceIndex, ByteBuffer bytes) throws IOException
+			{
+				callback.onBytes(index, bytes);
+			}
+		});
+	}
+
+	@Override
+	public void skip(long n) throws IOException
+	{
+		if (n < 0) throw new IllegalArgumentException("n must be zero or greater.");
+
+		if (!trySkip(n)) throw new EOFException("End of data reached.");
+	}
+
+	@Override
+	public boolean trySkip(long n) throws IOException
+	{
+		if (n < 0) throw new IllegalArgumentException("n must be zero or greater.");
+
+		if (_currentIndex + n > getLength())
+		{
+			_currentIndex = getLength();
+			return false;
+		}
+		_currentIndex += n;
+		return true;
+	}
+
+	@Override
+	public void seek(long index) throws IOException
+	{
+		_currentIndex = index;
+	}
+
+	@Override
+	public long getPosition() throws IOException
+	{
+		return _currentIndex;
+	}
+
+	@Override
+	protected boolean isValidIndex(long index, long bytesRequested) throws IOException
+	{
+		return bytesRequested >= 0 && index >= 0 && index + bytesRequested <= getLength();
+	}
+
+	@Override
+	protected void validateIndex(long index, long bytesRequested) throws IOException
+	{
+		if (!isValidIndex(index, bytesRequested))
+			throw new BufferBoundsException((int) index, (int) bytesRequested, getLength());
+	}
+
+	/**
+	 * @return the run holding <code>index</code>; an index at the end of the
+	 *         item maps to the last run
+	 */
+	private int findRun(long index)
+	{
+		int low = 0;
+		int high = _runCount - 1;
+		while (low < high)
+		{
+			int middle = (low + high + 1) >>> 1;
+			if (_runStarts[middle] <= index)
+			{
+				low = middle;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+}
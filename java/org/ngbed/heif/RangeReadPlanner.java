@@ -0,0 +1,127 @@
+package org.ngbed.heif;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.ngbed.heif.boxes.Box;
+import org.ngbed.heif.boxes.FourCC;
+import org.ngbed.heif.boxes.FullBox;
+import org.ngbed.heif.boxes.ItemInfoBox;
+import org.ngbed.heif.boxes.ItemInfoBox.ItemInfoEntry;
+import org.ngbed.heif.boxes.ItemLocationBox;
+import org.ngbed.heif.boxes.ItemLocationBox.ItemLocation;
+import org.ngbed.heif.io.ByteRange;
+import org.ngbed.heif.io.RandomAccessReader;
+import org.ngbed.heif.io.RangeFetchReader;
+import org.ngbed.heif.io.RangeFetcher;
+
+import com.drew.lang.BufferBoundsException;
+
+
+/**
+ * Plans the byte ranges of a remote HEIF object needed for metadata extraction,
+ * in two phases:
+ * <ol>
+ * <li>a head range, large enough to hold <code>ftyp</code> and <code>meta</code>
+ * in typical files, is fetched (with the rest of <code>meta</code> if it runs
+ * past the head);</li>
+ * <li>the item tables in <code>meta</code> give the exact extents of the Exif
+ * and <code>mime</code> (XMP) items, which are fetched as one coalesced
+ * batch.</li>
+ * </ol>
+ * ICC profiles live inside <code>meta</code> and so arrive with the first
+ * phase. The returned reader holds everything extraction needs in the common
+ * layout; anything else is fetched on demand.
+ */
+public class RangeReadPlanner
+{
+	public static final int DEFAULT_HEAD_SIZE = 65536;
+	public static final long DEFAULT_MAX_GAP = 4096;
+
+	public static RangeFetchReader plan(RangeFetcher fetcher) throws IOException
+	{
+		return plan(fetcher, DEFAULT_HEAD_SIZE, DEFAULT_MAX_GAP);
+	}
+
+	public static RangeFetchReader plan(RangeFetcher fetcher, int headSize, long maxGap) throws IOException
+	{
+		RangeFetchReader reader = new RangeFetchReader(fetcher);
+		reader.setMotorolaByteOrder(true);
+		reader.prefetch(Collections.singletonList(new ByteRange(0, headSize)), 0);
+
+		long length = reader.getLength();
+		try
+		{
+			while (reader.getPosition() + 8 <= length)
+			{
+				Box box = new Box(reader);
+				if (box.type == FourCC.META)
+				{
+					reader.prefetch(Collections.singletonList(new ByteRange(box.offset, box.size)), 0);
+					reader.prefetch(planItemRanges(reader, box), maxGap);
+					break;
+				}
+				if (box.size < box.countBytesRead)
+				{
+					// Size 0: the box runs to the end of the file
+					break;
+				}
+				reader.seek(box.offset + box.size);
+			}
+		}
+		catch (BufferBoundsException e)
+		{
+			// Truncated structure: planning stops here, and extraction reports it
+		}
+
+		reader.seek(0);
+		return reader;
+	}
+
+	private static List<ByteRange> planItemRanges(RandomAccessReader reader, Box box) throws IOException
+	{
+		FullBox metaBox = new FullBox(reader, box);
+		ItemInfoBox itemInfoBox = null;
+		ItemLocationBox itemLocationBox = null;
+
+		long metaEnd = metaBox.offset + metaBox.size;
+		while (reader.getPosition() + 8 <= metaEnd)
+		{
+			Box child = new Box(reader);
+			if (child.type == FourCC.IINF)
+			{
+				itemInfoBox = new ItemInfoBox(reader, child);
+			}
+			else if (child.type == FourCC.ILOC)
+			{
+				itemLocationBox = new ItemLocationBox(reader, child);
+			}
+			if (child.size < child.countBytesRead) break;
+			reader.seek(child.offset + child.size);
+		}
+
+		List<ByteRange> ranges = new ArrayList<ByteRange>();
+		// Header of the box following meta, usually mdat, which extraction walks over
+		ranges.add(new ByteRange(metaEnd, 16));
+		if (itemInfoBox == null || itemLocationBox == null) return ranges;
+
+		for (ItemInfoEntry entry : itemInfoBox.getEntries())
+		{
+			if (entry.itemType != FourCC.EXIF && entry.itemType != FourCC.MIME) continue;
+
+			ItemLocation location = itemLocationBox.getLocation(entry.itemID);
+			// Items in idat arrive with meta; items in other files are not read
+			if (location == null || location.getConstructionMethod() != 0
+					|| location.getDataReferenceIndex() != 0) continue;
+
+			long baseOffset = location.getBaseOffset();
+			for (int i = 0; i < location.getExtentCount(); i++)
+			{
+				ranges.add(new ByteRange(baseOffset + location.getExtentOffset(i), location.getExtentLength(i)));
+			}
+		}
+		return ranges;
+	}
+}
@@ -5,7 +5,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
 
 import com.drew.imaging.FileType;
 import com.drew.imaging.FileTypeDetector;
@@ -58,15 +57,7 @@ public class Sample
 			FileType fileType = FileTypeDetector.detectFileType(bufferedInputStream);
 			if (fileType == FileType.Heif)
 			{
-				RandomAccessFile streamFile = new RandomAccessFile(imageFile, "rw");
-				try
-				{
-					metadata = HeifMetadataReader.readMetadata(streamFile, streamFile.length());
-				}
-				finally
-				{
-					streamFile.close();
-				}
+				metadata = HeifMetadataReader.readMetadata(imageFile);
 			}
 			else
 			{
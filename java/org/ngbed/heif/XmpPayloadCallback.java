@@ -0,0 +1,19 @@
+package org.ngbed.heif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the undecoded XMP packet of the file, set with
+ * {@link ExtractionOptions#setXmpPayloadCallback(XmpPayloadCallback)}.
+ */
+public interface XmpPayloadCallback
+{
+	/**
+	 * @param xmpPacket the whole <code>mime</code> item, usually UTF-8 XML,
+	 *                  from its position to its limit. It may be a view of the
+	 *                  reader's own storage, and is only guaranteed to be valid
+	 *                  for the duration of the call.
+	 */
+	void onXmpPayload(ByteBuffer xmpPacket) throws IOException;
+}
@@ -11,7 +11,10 @@ public class Box
 {
 	private long firstsize;
 	private long largesize;
-	public String type;
+	/**
+	 * The box type as a {@link FourCC} code
+	 */
+	public int type;
 	public String usertype;
 
 	public long size;
@@ -23,13 +26,13 @@ public class Box
 		this.offset = reader.getPosition();
 		
 		this.firstsize = reader.getUInt32();
-		this.type = reader.getString(4);
+		this.type = reader.getInt32();
 		if (firstsize == 1)
 		{
 			largesize = reader.getInt64();
 		}
 
-		if (type.equals("uuid"))
+		if (type == FourCC.UUID)
 		{
 			usertype = reader.getString(16);
 		}
@@ -63,7 +66,7 @@ public class Box
 	public String toString()
 	{
 		StringBuffer sb = new StringBuffer();
-		sb.append("[" + this.getClass().getName() + "]-[" + this.type + "]");
+		sb.append("[" + this.getClass().getName() + "]-[" + FourCC.toString(this.type) + "]");
 		sb.append(" offset=" + this.offset);
 		sb.append(", size=" + this.size);
 		sb.append(", bytesRead=" + this.countBytesRead);
@@ -0,0 +1,24 @@
+package org.ngbed.heif.boxes;
+
+import java.io.IOException;
+
+import org.ngbed.heif.io.RandomAccessReader;
+
+import com.drew.metadata.Metadata;
+
+/**
+ * Parses the body of one box type, registered in a {@link BoxParserRegistry}.
+ */
+public interface BoxParser
+{
+	/**
+	 * Parses the body of <code>box</code>, whose header has already been read.
+	 * The reader may be left anywhere within the box; it is moved to the end of
+	 * the box afterwards.
+	 *
+	 * @param metadata the metadata being extracted, for parsers of custom boxes
+	 *                 that add their own directories
+	 * @return the parsed box, which is handed to the handler
+	 */
+	Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException;
+}
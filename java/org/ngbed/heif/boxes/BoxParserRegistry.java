@@ -0,0 +1,298 @@
+package org.ngbed.heif.boxes;
+
+import java.io.IOException;
+
+import org.ngbed.heif.io.RandomAccessReader;
+
+import com.drew.metadata.Metadata;
+
+/**
+ * Maps {@link FourCC} box types to the {@link BoxParser} that reads them.
+ * <p>
+ * Boxes whose type has no parser are skipped without being read, so
+ * unregistering a type turns its parsing off entirely, and registering a new
+ * type is enough to have custom boxes parsed. Lookups go through an
+ * open-addressing table keyed directly by the packed type. A registry is not
+ * safe for modification while extraction is running on it.
+ */
+public class BoxParserRegistry
+{
+	private static final int MIN_CAPACITY = 16;
+
+	private int[] _types;
+	private BoxParser[] _parsers;
+	private int _size;
+
+	public BoxParserRegistry()
+	{
+		_types = new int[MIN_CAPACITY];
+		_parsers = new BoxParser[MIN_CAPACITY];
+	}
+
+	public BoxParserRegistry(BoxParserRegistry registry)
+	{
+		_types = registry._types.clone();
+		_parsers = registry._parsers.clone();
+		_size = registry._size;
+	}
+
+	/**
+	 * @return a new registry with parsers for every box the extractor reads
+	 */
+	public static BoxParserRegistry createDefault()
+	{
+		BoxParserRegistry registry = new BoxParserRegistry();
+
+		registry.register(FourCC.FTYP, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new FileTypeBox(reader, box);
+			}
+		});
+		registry.register(FourCC.IPRO, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new ItemProtectionBox(reader, box);
+			}
+		});
+		registry.register(FourCC.PITM, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new PrimaryItemBox(reader, box);
+			}
+		});
+		registry.register(FourCC.IINF, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new ItemInfoBox(reader, box);
+			}
+		});
+		registry.register(FourCC.ILOC, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new ItemLocationBox(reader, box);
+			}
+		});
+		registry.register(FourCC.IDAT, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new ItemDataBox(reader, box);
+			}
+		});
+		registry.register(FourCC.IPMA, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new ItemPropertyAssociationBox(reader, box);
+			}
+		});
+
+		// Item properties, read from ipco
+		registry.register(FourCC.ISPE, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new ImageSpatialExtentsProperty(reader, box);
+			}
+		});
+		registry.register(FourCC.AUXC, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new AuxiliaryTypeProperty(reader, box);
+			}
+		});
+		registry.register(FourCC.IROT, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new ImageRotationBox(reader, box);
+			}
+		});
+		registry.register(FourCC.COLR, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new ColourInformationBox(reader, box);
+			}
+		});
+		registry.register(FourCC.PIXI, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new PixelInformationBox(reader, box);
+			}
+		});
+
+		return registry;
+	}
+
+	/**
+	 * @return a new registry with the default parsers, and parsers for the
+	 *         boxes that describe images rather than metadata, such as item
+	 *         references and decoder configurations; used by {@link org.ngbed.heif.BoxIndex}, where
+	 *         nothing is parsed until asked for
+	 */
+	public static BoxParserRegistry createIndexDefault()
+	{
+		BoxParserRegistry registry = createDefault();
+
+		registry.register(FourCC.IREF, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new ItemReferenceBox(reader, box);
+			}
+		});
+		registry.register(FourCC.HVCC, new BoxParser()
+		{
+			@Override
+			public Box parse(RandomAccessReader reader, Box box, Metadata metadata) throws IOException
+			{
+				return new HevcConfigurationBox(reader, box);
+			}
+		});
+
+		return registry;
+	}
+
+	/**
+	 * Registers <code>parser</code> for <code>type</code>, replacing any parser
+	 * already registered for it.
+	 */
+	public void register(int type, BoxParser parser)
+	{
+		if (parser == null) throw new NullPointerException();
+
+		int slot = find(type);
+		if (_parsers[slot] == null)
+		{
+			if ((_size + 1) * 2 > _types.length)
+			{
+				resize(_types.length * 2);
+				slot = find(type);
+			}
+			_types[slot] = type;
+			_size++;
+		}
+		_parsers[slot] = parser;
+	}
+
+	public void register(String type, BoxParser parser)
+	{
+		register(FourCC.valueOf(type), parser);
+	}
+
+	/**
+	 * @return the parser that was registered for <code>type</code>, or null
+	 */
+	public BoxParser unregister(int type)
+	{
+		int slot = find(type);
+		BoxParser parser = _parsers[slot];
+		if (parser == null) return null;
+
+		_parsers[slot] = null;
+		_size--;
+
+		// Shift back any entries in the same probe run, so that lookups never
+		// stop early at the emptied slot
+		int mask = _types.length - 1;
+		int empty = slot;
+		for (int i = (slot + 1) & mask; _parsers[i] != null; i = (i + 1) & mask)
+		{
+			int home = hash(_types[i]) & mask;
+			if (((i - home) & mask) >= ((i - empty) & mask))
+			{
+				_types[empty] = _types[i];
+				_parsers[empty] = _parsers[i];
+				_parsers[i] = null;
+				empty = i;
+			}
+		}
+		return parser;
+	}
+
+	public BoxParser unregister(String type)
+	{
+		return unregister(FourCC.valueOf(type));
+	}
+
+	/**
+	 * @return the parser registered for <code>type</code>, or null
+	 */
+	public BoxParser get(int type)
+	{
+		return _parsers[find(type)];
+	}
+
+	public boolean contains(int type)
+	{
+		return _parsers[find(type)] != null;
+	}
+
+	public int size()
+	{
+		return _size;
+	}
+
+	/**
+	 * @return the slot holding <code>type</code>, or the empty slot where it
+	 *         would be inserted
+	 */
+	private int find(int type)
+	{
+		int mask = _types.length - 1;
+		int slot = hash(type) & mask;
+		while (_parsers[slot] != null && _types[slot] != type)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize(int capacity)
+	{
+		int[] types = _types;
+		BoxParser[] parsers = _parsers;
+		_types = new int[capacity];
+		_parsers = new BoxParser[capacity];
+		for (int i = 0; i < types.length; i++)
+		{
+			if (parsers[i] == null) continue;
+
+			int slot = find(types[i]);
+			_types[slot] = types[i];
+			_parsers[slot] = parsers[i];
+		}
+	}
+
+	/**
+	 * Type codes are mostly lower-case ASCII, so their bits are mixed before
+	 * masking.
+	 */
+	private static int hash(int type)
+	{
+		int h = type * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -1,27 +1,44 @@
 package org.ngbed.heif.boxes;
 
 
-import com.drew.lang.ByteArrayReader;
+import org.ngbed.heif.io.BufferWindowReader;
 import org.ngbed.heif.io.RandomAccessReader;
 import com.drew.metadata.Metadata;
 import com.drew.metadata.heif.HeifDirectory;
 import com.drew.metadata.icc.IccReader;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * ISO/IEC 14496-12:2015 pg.159
+ * <p>
+ * An ICC profile is only located when the box is parsed, and read from the
+ * same reader when first asked for, which must then still be open; only
+ * sequential streams, which cannot come back for it, have it read at once.
+ * Its ID can be had from the header alone, and it is decoded only by
+ * {@link #addIccMetadata(Metadata)}.
  */
 public class ColourInformationBox extends Box
 {
+	private static final int ICC_HEADER_SIZE = 128;
+	private static final int ICC_PROFILE_ID_OFFSET = 84;
+	private static final int ICC_PROFILE_ID_SIZE = 16;
+
 	String colourType;
 	int colourPrimaries;
 	int transferCharacteristics;
 	int matrixCoefficients;
 	int fullRangeFlag;
+	long profileOffset;
+	long profileLength;
+	RandomAccessReader profileReader;
+	ByteBuffer profile;
+	byte[] profileID;
 
-	public ColourInformationBox(RandomAccessReader reader, Box box,
-			Metadata metadata) throws IOException
+	public ColourInformationBox(RandomAccessReader reader, Box box) throws IOException
 	{
 		super(box);
 
@@ -34,17 +51,21 @@ public class ColourInformationBox extends Box
 			// Last 7 bits are reserved
 			fullRangeFlag = (reader.getUInt8() & 0x80) >> 7;
 		}
-		else if (colourType.equals("rICC"))
-		{
-			byte[] buffer = reader.getBytes((int) (size - 12));
-			new IccReader().extract(new ByteArrayReader(buffer), metadata);
-		}
-		else if (colourType.equals("prof"))
+		else if (colourType.equals("rICC") || colourType.equals("prof"))
 		{
-			byte[] buffer = reader.getBytes((int) (size - 12));
-			new IccReader().extract(new ByteArrayReader(buffer), metadata);
+			profileOffset = reader.getPosition();
+			profileLength = offset + size - profileOffset;
+			if (reader.getLength() < 0)
+			{
+				profile = reader.getByteBuffer(profileOffset, profileLength);
+			}
+			else
+			{
+				profileReader = reader;
+			}
+			reader.seek(profileOffset + profileLength);
 		}
-		
+
 		countBytesRead = reader.getPosition() - offset;
 	}
 
@@ -52,4 +73,137 @@ public class ColourInformationBox extends Box
 	{
 
 	}
+
+	/**
+	 * @return <code>nclx</code>, <code>rICC</code> or <code>prof</code>
+	 */
+	public String getColourType()
+	{
+		return colourType;
+	}
+
+	/**
+	 * @return true if the box carries an ICC profile
+	 */
+	public boolean hasIccProfile()
+	{
+		return profile != null || profileReader != null;
+	}
+
+	/**
+	 * @return the offset of the ICC profile in the file, or 0 if there is none
+	 */
+	public long getIccProfileOffset()
+	{
+		return profileOffset;
+	}
+
+	public long getIccProfileLength()
+	{
+		return profileLength;
+	}
+
+	/**
+	 * Reads the profile on the first call.
+	 *
+	 * @return the undecoded ICC profile, read-only, or null if there is none.
+	 *         It may be a view of the reader's own storage.
+	 */
+	public ByteBuffer getIccProfile() throws IOException
+	{
+		if (profile == null && profileReader != null)
+		{
+			profile = readProfile(profileOffset, profileLength);
+			profileReader = null;
+		}
+		return profile == null ? null : profile.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Reads from the profile without moving the reader, which may be in the
+	 * middle of other boxes.
+	 */
+	private ByteBuffer readProfile(long index, long count) throws IOException
+	{
+		long position = profileReader.getPosition();
+		ByteBuffer bytes = profileReader.getByteBuffer(index, count);
+		profileReader.seek(position);
+		return bytes;
+	}
+
+	/**
+	 * Identifies the profile without decoding it, so that profiles shared by
+	 * many files, such as Display P3, can be decoded once and cached. The ID is
+	 * the one in the profile header; profiles from before ICC v4 usually leave
+	 * it zero, and have it computed as the header specifies: the MD5 of the
+	 * profile with the flags, rendering intent and profile ID fields zeroed.
+	 * <p>
+	 * ICC.1:2010 7.2.18
+	 *
+	 * @return the 16-byte profile ID, or null if there is no profile or it is
+	 *         shorter than its header
+	 */
+	public byte[] getIccProfileID() throws IOException
+	{
+		if (profileID != null) return profileID.clone();
+		if (!hasIccProfile() || profileLength < ICC_HEADER_SIZE) return null;
+
+		// Only the ID is read while it can be taken from the header
+		ByteBuffer header = profile != null ? profile.duplicate()
+				: readProfile(profileOffset, ICC_HEADER_SIZE);
+		byte[] id = new byte[ICC_PROFILE_ID_SIZE];
+		header.position(header.position() + ICC_PROFILE_ID_OFFSET);
+		header.get(id);
+
+		boolean zero = true;
+		for (byte b : id)
+		{
+			zero &= b == 0;
+		}
+		if (zero) id = computeIccProfileID();
+
+		profileID = id;
+		return profileID.clone();
+	}
+
+	private byte[] computeIccProfileID() throws IOException
+	{
+		MessageDigest md5;
+		try
+		{
+			md5 = MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java platform is required to provide MD5
+			throw new IllegalStateException(e);
+		}
+
+		byte[] header = new byte[ICC_HEADER_SIZE];
+		ByteBuffer data = getIccProfile();
+		data.get(header);
+		// Profile flags, rendering intent and profile ID
+		for (int i = 44; i < 48; i++)
+			header[i] = 0;
+		for (int i = 64; i < 68; i++)
+			header[i] = 0;
+		for (int i = ICC_PROFILE_ID_OFFSET; i < ICC_PROFILE_ID_OFFSET + ICC_PROFILE_ID_SIZE; i++)
+			header[i] = 0;
+
+		md5.update(header);
+		md5.update(data);
+		return md5.digest();
+	}
+
+	/**
+	 * Decodes the ICC profile, if the box carries one, into its own directory.
+	 */
+	public void addIccMetadata(Metadata metadata) throws IOException
+	{
+		ByteBuffer iccProfile = getIccProfile();
+		if (iccProfile != null)
+		{
+			new IccReader().extract(new BufferWindowReader(iccProfile), metadata);
+		}
+	}
 }
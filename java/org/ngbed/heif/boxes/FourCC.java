@@ -0,0 +1,96 @@
+package org.ngbed.heif.boxes;
+
+/**
+ * Four-character codes packed big-endian into an <code>int</code>, as they
+ * appear in the file, so that box types can be read and compared without
+ * allocating strings.
+ * <p>
+ * ISO/IEC 14496-12:2015 pg.6, ISO/IEC 23008-12:2017
+ */
+public final class FourCC
+{
+	// File structure
+	public static final int FTYP = 0x66747970; // 'ftyp'
+	public static final int MDAT = 0x6d646174; // 'mdat'
+	public static final int MOOV = 0x6d6f6f76; // 'moov'
+	public static final int FREE = 0x66726565; // 'free'
+	public static final int SKIP = 0x736b6970; // 'skip'
+	public static final int UUID = 0x75756964; // 'uuid'
+
+	// Metadata and items
+	public static final int META = 0x6d657461; // 'meta'
+	public static final int HDLR = 0x68646c72; // 'hdlr'
+	public static final int PITM = 0x7069746d; // 'pitm'
+	public static final int IPRO = 0x6970726f; // 'ipro'
+	public static final int SINF = 0x73696e66; // 'sinf'
+	public static final int FRMA = 0x66726d61; // 'frma'
+	public static final int IINF = 0x69696e66; // 'iinf'
+	public static final int INFE = 0x696e6665; // 'infe'
+	public static final int ILOC = 0x696c6f63; // 'iloc'
+	public static final int IDAT = 0x69646174; // 'idat'
+	public static final int IREF = 0x69726566; // 'iref'
+	public static final int DINF = 0x64696e66; // 'dinf'
+	public static final int DREF = 0x64726566; // 'dref'
+
+	// Item properties
+	public static final int IPRP = 0x69707270; // 'iprp'
+	public static final int IPCO = 0x6970636f; // 'ipco'
+	public static final int IPMA = 0x69706d61; // 'ipma'
+	public static final int ISPE = 0x69737065; // 'ispe'
+	public static final int PIXI = 0x70697869; // 'pixi'
+	public static final int COLR = 0x636f6c72; // 'colr'
+	public static final int IROT = 0x69726f74; // 'irot'
+	public static final int IMIR = 0x696d6972; // 'imir'
+	public static final int CLAP = 0x636c6170; // 'clap'
+	public static final int PASP = 0x70617370; // 'pasp'
+	public static final int AUXC = 0x61757843; // 'auxC'
+	public static final int HVCC = 0x68766343; // 'hvcC'
+	public static final int AV1C = 0x61763143; // 'av1C'
+
+	// Item and reference types
+	public static final int HVC1 = 0x68766331; // 'hvc1'
+	public static final int AV01 = 0x61763031; // 'av01'
+	public static final int GRID = 0x67726964; // 'grid'
+	public static final int IDEN = 0x6964656e; // 'iden'
+	public static final int IOVL = 0x696f766c; // 'iovl'
+	public static final int EXIF = 0x45786966; // 'Exif'
+	public static final int MIME = 0x6d696d65; // 'mime'
+	public static final int URI = 0x75726920; // 'uri '
+	public static final int THMB = 0x74686d62; // 'thmb'
+	public static final int CDSC = 0x63647363; // 'cdsc'
+	public static final int AUXL = 0x6175786c; // 'auxl'
+	public static final int DIMG = 0x64696d67; // 'dimg'
+
+	// Handler and colour types
+	public static final int PICT = 0x70696374; // 'pict'
+	public static final int NCLX = 0x6e636c78; // 'nclx'
+	public static final int RICC = 0x72494343; // 'rICC'
+	public static final int PROF = 0x70726f66; // 'prof'
+
+	// Brands
+	public static final int MIF1 = 0x6d696631; // 'mif1'
+	public static final int HEIC = 0x68656963; // 'heic'
+
+	private FourCC()
+	{
+	}
+
+	/**
+	 * Packs a code given as a string, such as the constants of
+	 * {@link com.drew.metadata.heif.HeifBoxTypes}.
+	 */
+	public static int valueOf(String code)
+	{
+		if (code.length() != 4) throw new IllegalArgumentException("A four-character code must have four characters: " + code);
+
+		return (code.charAt(0) & 0xFF) << 24 | (code.charAt(1) & 0xFF) << 16 | (code.charAt(2) & 0xFF) << 8
+				| (code.charAt(3) & 0xFF);
+	}
+
+	public static String toString(int code)
+	{
+		char[] chars = { (char) (code >>> 24 & 0xFF), (char) (code >>> 16 & 0xFF), (char) (code >>> 8 & 0xFF),
+				(char) (code & 0xFF) };
+		return new String(chars);
+	}
+}
@@ -0,0 +1,271 @@
+package org.ngbed.heif.boxes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ngbed.heif.io.RandomAccessReader;
+
+/**
+ * ISO/IEC 14496-15:2017 8.3.3.1
+ * <p>
+ * The NAL unit arrays are kept as one buffer, a view of the reader's storage
+ * where it has one, with the type, position and length of each NAL unit in
+ * primitive arrays; {@link #getNalUnit(int)} slices a unit out on demand.
+ * A truncated array list ends with the last complete NAL unit.
+ */
+public class HevcConfigurationBox extends Box
+{
+	public static final int NAL_UNIT_TYPE_VPS = 32;
+	public static final int NAL_UNIT_TYPE_SPS = 33;
+	public static final int NAL_UNIT_TYPE_PPS = 34;
+
+	int configurationVersion;
+	int profileSpace;
+	boolean tierFlag;
+	int profileIdc;
+	long profileCompatibilityFlags;
+	long constraintIndicatorFlags;
+	int levelIdc;
+	int minSpatialSegmentationIdc;
+	int parallelismType;
+	int chromaFormat;
+	int bitDepthLuma;
+	int bitDepthChroma;
+	int averageFrameRate;
+	int constantFrameRate;
+	int numTemporalLayers;
+	boolean temporalIdNested;
+	int lengthSize;
+
+	ByteBuffer nalUnitData;
+	int nalUnitCount;
+	int[] nalUnitTypes;
+	int[] nalUnitStarts;
+	int[] nalUnitLengths;
+
+	public HevcConfigurationBox(RandomAccessReader reader, Box box) throws IOException
+	{
+		super(box);
+
+		configurationVersion = reader.getUInt8();
+		int holder = reader.getUInt8();
+		profileSpace = (holder & 0xC0) >> 6;
+		tierFlag = (holder & 0x20) != 0;
+		profileIdc = holder & 0x1F;
+		profileCompatibilityFlags = reader.getUInt32();
+		constraintIndicatorFlags = (reader.getUInt32() << 16) | reader.getUInt16();
+		levelIdc = reader.getUInt8();
+		minSpatialSegmentationIdc = reader.getUInt16() & 0x0FFF;
+		parallelismType = reader.getUInt8() & 0x03;
+		chromaFormat = reader.getUInt8() & 0x03;
+		bitDepthLuma = (reader.getUInt8() & 0x07) + 8;
+		bitDepthChroma = (reader.getUInt8() & 0x07) + 8;
+		averageFrameRate = reader.getUInt16();
+		holder = reader.getUInt8();
+		constantFrameRate = (holder & 0xC0) >> 6;
+		numTemporalLayers = (holder & 0x38) >> 3;
+		temporalIdNested = (holder & 0x04) != 0;
+		lengthSize = (holder & 0x03) + 1;
+		int numOfArrays = reader.getUInt8();
+
+		long start = reader.getPosition();
+		long end = offset + size;
+		nalUnitData = end > start ? reader.getByteBuffer(start, end - start).slice() : ByteBuffer.allocate(0);
+		nalUnitTypes = new int[4];
+		nalUnitStarts = new int[4];
+		nalUnitLengths = new int[4];
+
+		int position = 0;
+		int limit = nalUnitData.remaining();
+		for (int i = 0; i < numOfArrays && position + 3 <= limit; i++)
+		{
+			int type = nalUnitData.get(position) & 0x3F;
+			int numNalus = nalUnitData.getShort(position + 1) & 0xFFFF;
+			position += 3;
+			for (int j = 0; j < numNalus && position + 2 <= limit; j++)
+			{
+				int length = nalUnitData.getShort(position) & 0xFFFF;
+				if (position + 2 + length > limit)
+				{
+					position = limit;
+					break;
+				}
+				addNalUnit(type, position + 2, length);
+				position += 2 + length;
+			}
+		}
+
+		reader.seek(start + position);
+		countBytesRead = reader.getPosition() - offset;
+	}
+
+	private void addNalUnit(int type, int start, int length)
+	{
+		if (nalUnitCount == nalUnitTypes.length)
+		{
+			nalUnitTypes = Arrays.copyOf(nalUnitTypes, nalUnitCount * 2);
+			nalUnitStarts = Arrays.copyOf(nalUnitStarts, nalUnitCount * 2);
+			nalUnitLengths = Arrays.copyOf(nalUnitLengths, nalUnitCount * 2);
+		}
+		nalUnitTypes[nalUnitCount] = type;
+		nalUnitStarts[nalUnitCount] = start;
+		nalUnitLengths[nalUnitCount] = length;
+		nalUnitCount++;
+	}
+
+	public int getConfigurationVersion()
+	{
+		return configurationVersion;
+	}
+
+	public int getProfileSpace()
+	{
+		return profileSpace;
+	}
+
+	/**
+	 * @return true for the High tier, false for the Main tier
+	 */
+	public boolean getTierFlag()
+	{
+		return tierFlag;
+	}
+
+	/**
+	 * @return general_profile_idc: 1 for Main, 2 for Main 10, 3 for Main Still
+	 *         Picture, 4 for the range extensions
+	 */
+	public int getProfileIdc()
+	{
+		return profileIdc;
+	}
+
+	public long getProfileCompatibilityFlags()
+	{
+		return profileCompatibilityFlags;
+	}
+
+	/**
+	 * @return the 48 bits of general_constraint_indicator_flags
+	 */
+	public long getConstraintIndicatorFlags()
+	{
+		return constraintIndicatorFlags;
+	}
+
+	/**
+	 * @return general_level_idc, 30 times the level number
+	 */
+	public int getLevelIdc()
+	{
+		return levelIdc;
+	}
+
+	public int getMinSpatialSegmentationIdc()
+	{
+		return minSpatialSegmentationIdc;
+	}
+
+	public int getParallelismType()
+	{
+		return parallelismType;
+	}
+
+	/**
+	 * @return chroma_format_idc: 0 for monochrome, 1 for 4:2:0, 2 for 4:2:2, 3
+	 *         for 4:4:4
+	 */
+	public int getChromaFormat()
+	{
+		return chromaFormat;
+	}
+
+	public int getBitDepthLuma()
+	{
+		return bitDepthLuma;
+	}
+
+	public int getBitDepthChroma()
+	{
+		return bitDepthChroma;
+	}
+
+	public int getAverageFrameRate()
+	{
+		return averageFrameRate;
+	}
+
+	public int getConstantFrameRate()
+	{
+		return constantFrameRate;
+	}
+
+	public int getNumTemporalLayers()
+	{
+		return numTemporalLayers;
+	}
+
+	public boolean isTemporalIdNested()
+	{
+		return temporalIdNested;
+	}
+
+	/**
+	 * @return the size in bytes of the length that precedes each NAL unit in
+	 *         the item data: 1, 2 or 4
+	 */
+	public int getLengthSize()
+	{
+		return lengthSize;
+	}
+
+	public int getNalUnitCount()
+	{
+		return nalUnitCount;
+	}
+
+	/**
+	 * @return the NAL unit type of the array holding the unit, such as
+	 *         {@link #NAL_UNIT_TYPE_SPS}
+	 */
+	public int getNalUnitType(int nalUnit)
+	{
+		return nalUnitTypes[checkNalUnit(nalUnit)];
+	}
+
+	/**
+	 * @return the NAL unit, without a length or start code, as a read-only
+	 *         slice
+	 */
+	public ByteBuffer getNalUnit(int nalUnit)
+	{
+		checkNalUnit(nalUnit);
+
+		ByteBuffer unit = nalUnitData.asReadOnlyBuffer();
+		unit.position(nalUnitStarts[nalUnit]);
+		unit.limit(nalUnitStarts[nalUnit] + nalUnitLengths[nalUnit]);
+		return unit.slice();
+	}
+
+	/**
+	 * @return the NAL units of <code>type</code>, in order
+	 */
+	public List<ByteBuffer> getNalUnits(int type)
+	{
+		List<ByteBuffer> units = new ArrayList<ByteBuffer>();
+		for (int i = 0; i < nalUnitCount; i++)
+		{
+			if (nalUnitTypes[i] == type) units.add(getNalUnit(i));
+		}
+		return units;
+	}
+
+	private int checkNalUnit(int nalUnit)
+	{
+		if (nalUnit < 0 || nalUnit >= nalUnitCount) throw new IndexOutOfBoundsException("NAL unit: " + nalUnit);
+		return nalUnit;
+	}
+}
@@ -25,6 +25,16 @@ public class ImageSpatialExtentsProperty extends FullBox
 		countBytesRead = reader.getPosition() - offset;
 	}
 
+	public long getWidth()
+	{
+		return width;
+	}
+
+	public long getHeight()
+	{
+		return height;
+	}
+
 	public void addMetadata(HeifDirectory directory)
 	{
 		if (!directory.containsTag(HeifDirectory.TAG_IMAGE_WIDTH)
@@ -0,0 +1,39 @@
+package org.ngbed.heif.boxes;
+
+import org.ngbed.heif.io.RandomAccessReader;
+
+import java.io.IOException;
+
+/**
+ * ISO/IEC 14496-12:2015 8.11.11
+ * <p>
+ * Only the position of the data is recorded; items stored here (construction
+ * method 1 in iloc) are read in place through
+ * {@link org.ngbed.heif.ItemDataReader}.
+ */
+public class ItemDataBox extends Box
+{
+	long dataOffset;
+	long dataLength;
+
+	public ItemDataBox(RandomAccessReader reader, Box box) throws IOException
+	{
+		super(box);
+
+		dataOffset = offset + countBytesRead;
+		dataLength = size - countBytesRead;
+	}
+
+	/**
+	 * @return the offset in the file of the first byte of data
+	 */
+	public long getDataOffset()
+	{
+		return dataOffset;
+	}
+
+	public long getDataLength()
+	{
+		return dataLength;
+	}
+}
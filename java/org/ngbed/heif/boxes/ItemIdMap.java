@@ -0,0 +1,127 @@
+package org.ngbed.heif.boxes;
+
+import java.util.Arrays;
+
+/**
+ * Maps item IDs to the position of their entry in an item table, such as iinf
+ * or iloc.
+ * <p>
+ * Item IDs are 16 or 32-bit unsigned values that need not be dense, so they go
+ * into an open-addressing table keyed directly by the ID rather than into an
+ * array indexed by it. Keys and positions are both kept in primitive arrays. A
+ * later entry for the same ID replaces the earlier one.
+ */
+public class ItemIdMap
+{
+	private static final int MIN_CAPACITY = 8;
+
+	private int[] _ids;
+	/** The position of each entry, or -1 for an empty slot */
+	private int[] _positions;
+	private int _size;
+
+	public ItemIdMap()
+	{
+		this(0);
+	}
+
+	/**
+	 * @param expectedSize the number of entries to make room for up front
+	 */
+	public ItemIdMap(int expectedSize)
+	{
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2)
+		{
+			capacity <<= 1;
+		}
+		_ids = new int[capacity];
+		_positions = new int[capacity];
+		Arrays.fill(_positions, -1);
+	}
+
+	/**
+	 * @return the position previously mapped to <code>itemID</code>, or -1
+	 */
+	public int put(long itemID, int position)
+	{
+		if (position < 0) throw new IllegalArgumentException("position must be zero or greater.");
+
+		int slot = find((int) itemID);
+		int previous = _positions[slot];
+		if (previous == -1)
+		{
+			if ((_size + 1) * 2 > _ids.length)
+			{
+				resize(_ids.length * 2);
+				slot = find((int) itemID);
+			}
+			_ids[slot] = (int) itemID;
+			_size++;
+		}
+		_positions[slot] = position;
+		return previous;
+	}
+
+	/**
+	 * @return the position of the entry for <code>itemID</code>, or -1
+	 */
+	public int get(long itemID)
+	{
+		if (itemID < 0 || itemID > 0xFFFFFFFFL) return -1;
+
+		return _positions[find((int) itemID)];
+	}
+
+	public boolean containsKey(long itemID)
+	{
+		return get(itemID) != -1;
+	}
+
+	public int size()
+	{
+		return _size;
+	}
+
+	/**
+	 * @return the slot holding <code>id</code>, or the empty slot where it would
+	 *         be inserted
+	 */
+	private int find(int id)
+	{
+		int mask = _ids.length - 1;
+		int slot = hash(id) & mask;
+		while (_positions[slot] != -1 && _ids[slot] != id)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize(int capacity)
+	{
+		int[] ids = _ids;
+		int[] positions = _positions;
+		_ids = new int[capacity];
+		_positions = new int[capacity];
+		Arrays.fill(_positions, -1);
+		for (int i = 0; i < ids.length; i++)
+		{
+			if (positions[i] == -1) continue;
+
+			int slot = find(ids[i]);
+			_ids[slot] = ids[i];
+			_positions[slot] = positions[i];
+		}
+	}
+
+	/**
+	 * IDs are often small and consecutive, so their bits are mixed before
+	 * masking.
+	 */
+	private static int hash(int id)
+	{
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -1,6 +1,9 @@
 package org.ngbed.heif.boxes;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import com.drew.lang.Charsets;
 import org.ngbed.heif.io.RandomAccessReader;
@@ -12,8 +15,10 @@ import com.drew.metadata.heif.HeifDirectory;
 public class ItemInfoBox extends FullBox
 {
 	long entryCount;
-	ItemInfoEntry[] entries;
+	ArrayList<ItemInfoEntry> entries;
+	ItemIdMap entriesByID;
 	ItemInfoEntry exifEntry = null;
+	ItemInfoEntry xmpEntry = null;
 
 	public ItemInfoBox(RandomAccessReader reader, Box box) throws IOException
 	{
@@ -28,13 +33,23 @@ public class ItemInfoBox extends FullBox
 			entryCount = reader.getUInt32();
 		}
 
-		entries = new ItemInfoEntry[(int) entryCount + 1];
-		for (int i = 1; i <= entryCount; i++)
+		// Every infe box takes at least 12 bytes, which bounds what a corrupt
+		// count can allocate
+		int expectedCount = (int) Math.min(entryCount, Math.max(0, countBytesUnread()) / 12);
+		entries = new ArrayList<ItemInfoEntry>(expectedCount);
+		entriesByID = new ItemIdMap(expectedCount);
+		for (long i = 0; i < entryCount; i++)
 		{
-			entries[i] = new ItemInfoEntry(reader, new Box(reader));
-			if ("Exif".equals(entries[i].itemType))
+			ItemInfoEntry entry = new ItemInfoEntry(reader, new Box(reader));
+			entriesByID.put(entry.itemID, entries.size());
+			entries.add(entry);
+			if (entry.itemType == FourCC.EXIF)
 			{
-				exifEntry = entries[i];
+				exifEntry = entry;
+			}
+			else if (xmpEntry == null && entry.isXmp())
+			{
+				xmpEntry = entry;
 			}
 		}
 
@@ -45,56 +60,86 @@ public class ItemInfoBox extends FullBox
 	{
 		return exifEntry;
 	}
+
+	/**
+	 * @return the first <code>mime</code> item of type
+	 *         <code>application/rdf+xml</code>, or null
+	 */
+	public ItemInfoEntry getXmpItemInfoEntry()
+	{
+		return xmpEntry;
+	}
+
+	/**
+	 * @return every entry, in the order of the box
+	 */
+	public List<ItemInfoEntry> getEntries()
+	{
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * @return the entry of the item with the given ID, or null
+	 */
+	public ItemInfoEntry getEntry(long itemID)
+	{
+		int position = entriesByID.get(itemID);
+		return position == -1 ? null : entries.get(position);
+	}
+
+	/**
+	 * @param itemType a {@link FourCC} code
+	 * @return the entries of that type, in the order of the box
+	 */
+	public List<ItemInfoEntry> getEntriesOfType(int itemType)
+	{
+		List<ItemInfoEntry> matches = new ArrayList<ItemInfoEntry>();
+		for (ItemInfoEntry entry : entries)
+		{
+			if (entry.itemType == itemType) matches.add(entry);
+		}
+		return matches;
+	}
+
+	public List<ItemInfoEntry> getEntriesOfType(String itemType)
+	{
+		return getEntriesOfType(FourCC.valueOf(itemType));
+	}
 	
 	public static class ItemInfoEntry extends FullBox
 	{
+		public static final String XMP_CONTENT_TYPE = "application/rdf+xml";
+
 		public long itemID;
 		public long itemProtectionIndex;
 		public String itemName;
 		public String contentType;
 		public String contentEncoding;
 		public String extensionType;
-		public String itemType;
+		/**
+		 * The item type as a {@link FourCC} code, or 0 for version 0 and 1 entries
+		 */
+		public int itemType;
 		public String itemUriType;
 
+		private int stringsPosition;
+
 		public ItemInfoEntry(RandomAccessReader reader, Box box) throws IOException
 		{
 			super(reader, box);
 
-			int remainBytes = 0;
-
 			if ((version == 0) || (version == 1))
 			{
 				itemID = reader.getUInt16();
 				itemProtectionIndex = reader.getUInt16();
 
-				remainBytes = (int) (this.size - (reader.getPosition() - this.offset));
-				if (remainBytes > 0)
+				byte[] strings = getRemainingBytes(reader);
+				itemName = nextString(strings);
+				contentType = nextString(strings);
+				contentEncoding = nextString(strings);
+				if (version == 1 && stringsPosition + 4 <= strings.length)
 				{
-					itemName = reader.getNullTerminatedString(remainBytes, Charsets.UTF_8);
-
-					remainBytes = (int) (this.size - (reader.getPosition() - this.offset));
-					if (remainBytes > 0)
-					{
-						contentType = reader.getNullTerminatedString(remainBytes, Charsets.UTF_8);
-
-						remainBytes = (int) (this.size - (reader.getPosition() - this.offset));
-						if (remainBytes > 0)
-						{
-							extensionType = reader.getNullTerminatedString(remainBytes, Charsets.UTF_8);
-						}
-					}
-
-				}
-
-			}
-
-			if (version == 1)
-			{
-				remainBytes = (int) (this.size - (reader.getPosition() - this.offset));
-				if (remainBytes >= 4)
-				{
-					contentEncoding = reader.getString(4);
+					extensionType = new String(strings, stringsPosition, 4, Charsets.ASCII);
 				}
 			}
 
@@ -110,43 +155,59 @@ public class ItemInfoBox extends FullBox
 				}
 
 				itemProtectionIndex = reader.getUInt16();
-				itemType = reader.getString(4);
+				itemType = reader.getInt32();
 
-				remainBytes = (int) (this.size - (reader.getPosition() - this.offset));
-				if (remainBytes > 0)
+				byte[] strings = getRemainingBytes(reader);
+				itemName = nextString(strings);
+				if (itemType == FourCC.MIME)
 				{
-					itemName = reader.getNullTerminatedString(remainBytes, Charsets.UTF_8);
-					if (itemType.equals("mime"))
-					{
-						remainBytes = (int) (this.size - (reader.getPosition() - this.offset));
-						if (remainBytes > 0)
-						{
-							contentType = reader.getNullTerminatedString(remainBytes, Charsets.UTF_8);
-
-							remainBytes = (int) (this.size - (reader.getPosition() - this.offset));
-							if (remainBytes > 0)
-							{
-								contentEncoding = reader.getNullTerminatedString(remainBytes, Charsets.UTF_8);
-							}
-						}
-					}
-					else if (itemType.equals("uri"))
-					{
-						remainBytes = (int) (this.size - (reader.getPosition() - this.offset));
-						if (remainBytes > 0)
-						{
-							itemUriType = reader.getString(remainBytes);
-						}
-
-					}
+					contentType = nextString(strings);
+					contentEncoding = nextString(strings);
+				}
+				else if (itemType == FourCC.URI)
+				{
+					itemUriType = nextString(strings);
 				}
 			}
 
 			countBytesRead = reader.getPosition() - offset;
+		}
+
+		/**
+		 * @return true for a <code>mime</code> item holding an XMP packet
+		 */
+		public boolean isXmp()
+		{
+			return itemType == FourCC.MIME && contentType != null && XMP_CONTENT_TYPE.equals(contentType.trim());
+		}
 
-			//System.out.println(itemID + ", " + itemProtectionIndex + ", " + itemType);
+		/**
+		 * The strings of an entry follow each other up to the end of the box, so
+		 * they are read in one go and split on their terminators; reading them
+		 * one by one would have to seek back after each.
+		 */
+		private byte[] getRemainingBytes(RandomAccessReader reader) throws IOException
+		{
+			int remainBytes = (int) (this.size - (reader.getPosition() - this.offset));
+			return remainBytes > 0 ? reader.getBytes(remainBytes) : new byte[0];
 		}
 
+		/**
+		 * @return the next null-terminated string, which may also end with the
+		 *         box, or null if there are no bytes left
+		 */
+		private String nextString(byte[] strings)
+		{
+			if (stringsPosition >= strings.length) return null;
+
+			int end = stringsPosition;
+			while (end < strings.length && strings[end] != 0)
+				end++;
+
+			String string = new String(strings, stringsPosition, end - stringsPosition, Charsets.UTF_8);
+			stringsPosition = end + 1;
+			return string;
+		}
 	}
 
 	public void addMetadata(HeifDirectory directory)
@@ -1,12 +1,20 @@
 package org.ngbed.heif.boxes;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.ngbed.heif.io.RandomAccessReader;
 
 /**
  * ISO/IEC 14496-12:2015 pg.77-80
+ * <p>
+ * Items and extents are stored column by column in primitive arrays: the
+ * extents of the item at position <code>i</code> are those from
+ * <code>firstExtents[i]</code> up to <code>firstExtents[i + 1]</code>. Parsing
+ * allocates the same handful of arrays whatever the number of items, and
+ * {@link ItemLocation} is a view over one row of them.
  */
 public class ItemLocationBox extends FullBox
 {
@@ -15,7 +23,21 @@ public class ItemLocationBox extends FullBox
 	int lengthSize;
 	int baseOffsetSize;
 	long itemCount;
-	ItemLocation[] locations;
+
+	int locationCount;
+	long[] itemIDs;
+	int[] constructionMethods;
+	int[] dataReferenceIndexes;
+	long[] baseOffsets;
+	/** The first extent of each item, followed by the number of extents */
+	int[] firstExtents;
+	ItemIdMap locationsByID;
+
+	int extentCount;
+	long[] extentOffsets;
+	long[] extentLengths;
+	/** The extent indexes, or null when the box has none */
+	long[] extentIndexes;
 
 	public ItemLocationBox(RandomAccessReader reader, Box box) throws IOException
 	{
@@ -44,16 +66,25 @@ public class ItemLocationBox extends FullBox
 			itemCount = reader.getUInt32();
 		}
 
-		locations = new ItemLocation[(int) itemCount + 1];
+		// The smallest entry is 6 bytes, which bounds what a corrupt count can
+		// allocate
+		int capacity = (int) Math.min(itemCount, Math.max(0, countBytesUnread()) / 6);
+		itemIDs = new long[capacity];
+		constructionMethods = new int[capacity];
+		dataReferenceIndexes = new int[capacity];
+		baseOffsets = new long[capacity];
+		firstExtents = new int[capacity + 1];
+		locationsByID = new ItemIdMap(capacity);
 
-		long itemID = 0;
-		int constructionMethod = 0;
-		int dataReferenceIndex;
-		byte[] baseOffset;
-		int extentCount;
+		extentOffsets = new long[capacity];
+		extentLengths = new long[capacity];
+		if (indexSize > 0) extentIndexes = new long[capacity];
 
-		for (int i = 1; i <= itemCount; i++)
+		for (long i = 0; i < itemCount; i++)
 		{
+			if (locationCount == itemIDs.length) growLocations();
+
+			long itemID = 0;
 			if (version < 2)
 			{
 				itemID = reader.getUInt16();
@@ -62,44 +93,94 @@ public class ItemLocationBox extends FullBox
 			{
 				itemID = reader.getUInt32();
 			}
+			int constructionMethod = 0;
 			if ((version == 1) || (version == 2))
 			{
 				holder = reader.getUInt16();
 				constructionMethod = (holder & 0x000F);
 			}
 
-			dataReferenceIndex = reader.getUInt16();
-			baseOffset = reader.getBytes(baseOffsetSize);
-			extentCount = reader.getUInt16();
-			locations[i] = new ItemLocation(itemID, constructionMethod, dataReferenceIndex, baseOffset, extentCount);
+			itemIDs[locationCount] = itemID;
+			constructionMethods[locationCount] = constructionMethod;
+			dataReferenceIndexes[locationCount] = reader.getUInt16();
+			baseOffsets[locationCount] = getIntFromUnknownByte(baseOffsetSize, reader);
+			firstExtents[locationCount] = extentCount;
+			locationsByID.put(itemID, locationCount);
 
-			Long extentIndex = null;
-			long extentOffset;
-			long extentLength;
-			Extent extent;
-			for (int j = 0; j < extentCount; j++)
+			int count = reader.getUInt16();
+			for (int j = 0; j < count; j++)
 			{
-				if ((version == 1) || (version == 2) && (indexSize > 0))
+				if (extentCount == extentOffsets.length) growExtents();
+
+				if (extentIndexes != null)
 				{
-					extentIndex = getIntFromUnknownByte(indexSize, reader);
+					extentIndexes[extentCount] = getIntFromUnknownByte(indexSize, reader);
 				}
-				extentOffset = getIntFromUnknownByte(offsetSize, reader);
-				extentLength = getIntFromUnknownByte(lengthSize, reader);
-				extent = new Extent(extentIndex == null ? null : extentIndex, extentOffset, extentLength);
-				//System.out.println(itemID + ", " + constructionMethod + ", " + extentOffset + ", " + extentLength);
-				locations[i].addExtent(extent);
+				extentOffsets[extentCount] = getIntFromUnknownByte(offsetSize, reader);
+				extentLengths[extentCount] = getIntFromUnknownByte(lengthSize, reader);
+				extentCount++;
 			}
+			locationCount++;
 		}
+		firstExtents[locationCount] = extentCount;
 
 		countBytesRead = reader.getPosition() - offset;
 	}
 
-	public ItemLocation getLocation(int itemID)
+	private void growLocations()
 	{
-		return locations[itemID];
+		int capacity = Math.max(8, itemIDs.length * 2);
+		itemIDs = Arrays.copyOf(itemIDs, capacity);
+		constructionMethods = Arrays.copyOf(constructionMethods, capacity);
+		dataReferenceIndexes = Arrays.copyOf(dataReferenceIndexes, capacity);
+		baseOffsets = Arrays.copyOf(baseOffsets, capacity);
+		firstExtents = Arrays.copyOf(firstExtents, capacity + 1);
 	}
 
-	public Long getIntFromUnknownByte(int variable, RandomAccessReader reader) throws IOException
+	private void growExtents()
+	{
+		int capacity = Math.max(8, extentOffsets.length * 2);
+		extentOffsets = Arrays.copyOf(extentOffsets, capacity);
+		extentLengths = Arrays.copyOf(extentLengths, capacity);
+		if (extentIndexes != null) extentIndexes = Arrays.copyOf(extentIndexes, capacity);
+	}
+
+	/**
+	 * @return the location of the item with the given ID, or null
+	 */
+	public ItemLocation getLocation(long itemID)
+	{
+		int position = locationsByID.get(itemID);
+		return position == -1 ? null : new ItemLocation(this, position);
+	}
+
+	/**
+	 * @return every location, in the order of the box
+	 */
+	public List<ItemLocation> getLocations()
+	{
+		return new AbstractList<ItemLocation>()
+		{
+			@Override
+			public ItemLocation get(int index)
+			{
+				if (index < 0 || index >= locationCount) throw new IndexOutOfBoundsException("Index: " + index);
+				return new ItemLocation(ItemLocationBox.this, index);
+			}
+
+			@Override
+			public int size()
+			{
+				return locationCount;
+			}
+		};
+	}
+
+	/**
+	 * Reads a field of 0, 1, 2, 4 or 8 bytes. A field of size 0 is absent from
+	 * the box and reads as 0.
+	 */
+	public long getIntFromUnknownByte(int variable, RandomAccessReader reader) throws IOException
 	{
 		switch (variable)
 		{
@@ -112,46 +193,78 @@ public class ItemLocationBox extends FullBox
 		case (8):
 			return reader.getInt64();
 		default:
-			return null;
+			return 0;
 		}
 	}
 
+	/**
+	 * One item of the box. Extents are addressed by their 0-based position
+	 * within the item.
+	 */
 	public static class ItemLocation
 	{
-		public long itemID;
-		public int constructionMethod;
-		public int dataReferenceIndex;
-		public byte[] baseOffset;
-		public int extentCount;
-		public ArrayList<Extent> extents = new ArrayList<Extent>();
+		private final ItemLocationBox box;
+		private final int position;
 
-		public ItemLocation(long itemID, int constructionMethod, int dataReferenceIndex, byte[] baseOffset,
-				int extentCount)
+		ItemLocation(ItemLocationBox box, int position)
 		{
-			this.itemID = itemID;
-			this.constructionMethod = constructionMethod;
-			this.dataReferenceIndex = dataReferenceIndex;
-			this.baseOffset = baseOffset;
-			this.extentCount = extentCount;
+			this.box = box;
+			this.position = position;
 		}
 
-		public void addExtent(Extent extent)
+		public long getItemID()
 		{
-			extents.add(extent);
+			return box.itemIDs[position];
 		}
-	}
 
-	public static class Extent
-	{
-		public Long index;
-		public long offset;
-		public long length;
+		public int getConstructionMethod()
+		{
+			return box.constructionMethods[position];
+		}
+
+		public int getDataReferenceIndex()
+		{
+			return box.dataReferenceIndexes[position];
+		}
+
+		public long getBaseOffset()
+		{
+			return box.baseOffsets[position];
+		}
+
+		public int getExtentCount()
+		{
+			return box.firstExtents[position + 1] - box.firstExtents[position];
+		}
+
+		public long getExtentOffset(int extent)
+		{
+			return box.extentOffsets[extentPosition(extent)];
+		}
+
+		/**
+		 * @return the length of the extent, or 0 if it runs to the end of its
+		 *         source
+		 */
+		public long getExtentLength(int extent)
+		{
+			return box.extentLengths[extentPosition(extent)];
+		}
+
+		/**
+		 * @return the 1-based extent index, for construction method 2, or 0 if
+		 *         the box has none
+		 */
+		public long getExtentIndex(int extent)
+		{
+			int index = extentPosition(extent);
+			return box.extentIndexes == null ? 0 : box.extentIndexes[index];
+		}
 
-		public Extent(Long index, long offset, long length)
+		private int extentPosition(int extent)
 		{
-			this.index = index;
-			this.offset = offset;
-			this.length = length;
+			if (extent < 0 || extent >= getExtentCount()) throw new IndexOutOfBoundsException("Extent: " + extent);
+			return box.firstExtents[position] + extent;
 		}
 	}
 }
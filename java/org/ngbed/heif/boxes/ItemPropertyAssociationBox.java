@@ -0,0 +1,148 @@
+package org.ngbed.heif.boxes;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.ngbed.heif.io.RandomAccessReader;
+
+/**
+ * ISO/IEC 23008-12:2017 pg.28
+ * <p>
+ * Associations are held in flat arrays: <code>itemIDs[n]</code> owns the
+ * packed associations from <code>associationStarts[n]</code> up to
+ * <code>associationStarts[n + 1]</code>, each an essential flag (bit 15) and a
+ * property index.
+ */
+public class ItemPropertyAssociationBox extends FullBox
+{
+	private static final int ESSENTIAL = 0x8000;
+	private static final int INDEX_MASK = 0x7FFF;
+
+	long entryCount;
+	int[] itemIDs;
+	int[] associationStarts;
+	short[] associations;
+	boolean sorted = true;
+
+	public ItemPropertyAssociationBox(RandomAccessReader reader, Box box) throws IOException
+	{
+		super(reader, box);
+
+		boolean wideIndexes = (flags[2] & 1) == 1;
+
+		entryCount = reader.getUInt32();
+		// The arrays are sized from the count, so it must fit in the box before
+		// anything is allocated; the smallest entry is an item ID and a count
+		long end = isLastBox() && reader.getLength() >= 0 ? reader.getLength() : offset + size;
+		int minimumEntrySize = (version < 1) ? 3 : 5;
+		if (entryCount > Math.max(0, end - reader.getPosition()) / minimumEntrySize)
+		{
+			throw new EOFException(String.format("Box 'ipma' at offset %d is too short for %d entries", offset,
+					entryCount));
+		}
+		itemIDs = new int[(int) entryCount];
+		associationStarts = new int[(int) entryCount + 1];
+		associations = new short[16];
+
+		int count = 0;
+		for (int i = 0; i < entryCount; i++)
+		{
+			itemIDs[i] = (version < 1) ? reader.getUInt16() : (int) reader.getUInt32();
+			if (i > 0 && (itemIDs[i] & 0xFFFFFFFFL) <= (itemIDs[i - 1] & 0xFFFFFFFFL)) sorted = false;
+			associationStarts[i] = count;
+
+			int associationCount = reader.getUInt8();
+			if (count + associationCount > associations.length)
+			{
+				short[] grown = new short[Math.max(associations.length * 2, count + associationCount)];
+				System.arraycopy(associations, 0, grown, 0, count);
+				associations = grown;
+			}
+			for (int j = 0; j < associationCount; j++)
+			{
+				int value;
+				if (wideIndexes)
+				{
+					value = reader.getUInt16();
+				}
+				else
+				{
+					// Widen the 1 bit flag and 7 bit index to the 16 bit layout
+					int holder = reader.getUInt8();
+					value = (holder & 0x80) << 8 | (holder & 0x7F);
+				}
+				associations[count++] = (short) value;
+			}
+		}
+		associationStarts[(int) entryCount] = count;
+
+		countBytesRead = reader.getPosition() - offset;
+	}
+
+	/**
+	 * @return the 1-based indexes, into {@link ItemPropertyContainerBox}, of the
+	 *         properties associated with <code>itemID</code>, in order
+	 */
+	public int[] getPropertyIndexes(long itemID)
+	{
+		int entry = findEntry(itemID);
+		if (entry < 0) return new int[0];
+
+		int start = associationStarts[entry];
+		int[] indexes = new int[associationStarts[entry + 1] - start];
+		for (int i = 0; i < indexes.length; i++)
+		{
+			indexes[i] = associations[start + i] & INDEX_MASK;
+		}
+		return indexes;
+	}
+
+	/**
+	 * @return whether the property at <code>propertyIndex</code> is marked as
+	 *         essential for <code>itemID</code>
+	 */
+	public boolean isEssential(long itemID, int propertyIndex)
+	{
+		int entry = findEntry(itemID);
+		if (entry < 0) return false;
+
+		for (int i = associationStarts[entry]; i < associationStarts[entry + 1]; i++)
+		{
+			if ((associations[i] & INDEX_MASK) == propertyIndex) return (associations[i] & ESSENTIAL) != 0;
+		}
+		return false;
+	}
+
+	private int findEntry(long itemID)
+	{
+		if (!sorted)
+		{
+			for (int i = 0; i < itemIDs.length; i++)
+			{
+				if ((itemIDs[i] & 0xFFFFFFFFL) == itemID) return i;
+			}
+			return -1;
+		}
+
+		int low = 0;
+		int high = itemIDs.length - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			long value = itemIDs[mid] & 0xFFFFFFFFL;
+			if (value < itemID)
+			{
+				low = mid + 1;
+			}
+			else if (value > itemID)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,41 @@
+package org.ngbed.heif.boxes;
+
+import java.util.ArrayList;
+
+/**
+ * ISO/IEC 23008-12:2017 pg.28
+ */
+public class ItemPropertyContainerBox extends Box
+{
+	ArrayList<Box> properties = new ArrayList<Box>();
+
+	public ItemPropertyContainerBox(Box box)
+	{
+		super(box);
+	}
+
+	/**
+	 * Appends the next property. Properties that are not understood must still
+	 * be added, as a plain {@link Box}, to keep the indexes in step.
+	 */
+	public void addProperty(Box property)
+	{
+		properties.add(property);
+	}
+
+	/**
+	 * @param index the 1-based property index used by
+	 *              {@link ItemPropertyAssociationBox}; 0 means no property
+	 * @return the property, or null if there is none at <code>index</code>
+	 */
+	public Box getProperty(int index)
+	{
+		if (index < 1 || index > properties.size()) return null;
+		return properties.get(index - 1);
+	}
+
+	public int getPropertyCount()
+	{
+		return properties.size();
+	}
+}
@@ -0,0 +1,148 @@
+package org.ngbed.heif.boxes;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.ngbed.heif.io.RandomAccessReader;
+
+/**
+ * ISO/IEC 14496-12:2015 8.11.12
+ * <p>
+ * Each child box references, with its own type (<code>thmb</code>,
+ * <code>cdsc</code>, <code>dimg</code>, <code>auxl</code>...), from one item to
+ * a list of items. References are held in flat arrays:
+ * <code>fromItemIDs[n]</code> of type <code>types[n]</code> refers to the items
+ * from <code>toItemStarts[n]</code> up to <code>toItemStarts[n + 1]</code> in
+ * <code>toItemIDs</code>, in order.
+ */
+public class ItemReferenceBox extends FullBox
+{
+	private static final long[] NO_ITEMS = new long[0];
+
+	int referenceCount;
+	int[] types;
+	long[] fromItemIDs;
+	int[] toItemStarts;
+	long[] toItemIDs;
+
+	public ItemReferenceBox(RandomAccessReader reader, Box box) throws IOException
+	{
+		super(reader, box);
+
+		types = new int[8];
+		fromItemIDs = new long[8];
+		toItemStarts = new int[9];
+		toItemIDs = new long[16];
+
+		int idSize = (version == 0) ? 2 : 4;
+		int count = 0;
+		long end = offset + size;
+		while (reader.getPosition() + 8 <= end)
+		{
+			Box reference = new Box(reader);
+			if (reference.size < reference.countBytesRead + idSize + 2 || reference.size > end - reference.offset) break;
+
+			if (referenceCount == types.length)
+			{
+				types = Arrays.copyOf(types, referenceCount * 2);
+				fromItemIDs = Arrays.copyOf(fromItemIDs, referenceCount * 2);
+				toItemStarts = Arrays.copyOf(toItemStarts, referenceCount * 2 + 1);
+			}
+			types[referenceCount] = reference.type;
+			fromItemIDs[referenceCount] = (idSize == 2) ? reader.getUInt16() : reader.getUInt32();
+			toItemStarts[referenceCount] = count;
+
+			// A corrupt count must not read past the reference box, and so lose
+			// the boxes after iref
+			long referenceEnd = reference.offset + reference.size;
+			int referenceItemCount = (int) Math.min(reader.getUInt16(), (referenceEnd - reader.getPosition()) / idSize);
+			if (count + referenceItemCount > toItemIDs.length)
+			{
+				toItemIDs = Arrays.copyOf(toItemIDs, Math.max(toItemIDs.length * 2, count + referenceItemCount));
+			}
+			for (int j = 0; j < referenceItemCount; j++)
+			{
+				toItemIDs[count++] = (idSize == 2) ? reader.getUInt16() : reader.getUInt32();
+			}
+			referenceCount++;
+			reader.seek(referenceEnd);
+		}
+		toItemStarts[referenceCount] = count;
+
+		countBytesRead = reader.getPosition() - offset;
+	}
+
+	/**
+	 * @param type a {@link FourCC} code
+	 * @return the items that <code>fromItemID</code> refers to with references
+	 *         of <code>type</code>, in order
+	 */
+	public long[] getReferences(int type, long fromItemID)
+	{
+		long[] items = NO_ITEMS;
+		for (int i = 0; i < referenceCount; i++)
+		{
+			if (types[i] != type || fromItemIDs[i] != fromItemID) continue;
+
+			int start = toItemStarts[i];
+			int count = toItemStarts[i + 1] - start;
+			items = Arrays.copyOf(items, items.length + count);
+			System.arraycopy(toItemIDs, start, items, items.length - count, count);
+		}
+		return items;
+	}
+
+	/**
+	 * @param type a {@link FourCC} code
+	 * @return the items that refer to <code>toItemID</code> with references of
+	 *         <code>type</code>, in the order of the box
+	 */
+	public long[] getReferencingItems(int type, long toItemID)
+	{
+		long[] items = NO_ITEMS;
+		for (int i = 0; i < referenceCount; i++)
+		{
+			if (types[i] != type) continue;
+
+			for (int j = toItemStarts[i]; j < toItemStarts[i + 1]; j++)
+			{
+				if (toItemIDs[j] != toItemID) continue;
+
+				items = Arrays.copyOf(items, items.length + 1);
+				items[items.length - 1] = fromItemIDs[i];
+				break;
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * @return the number of child reference boxes
+	 */
+	public int getReferenceCount()
+	{
+		return referenceCount;
+	}
+
+	public int getReferenceType(int reference)
+	{
+		return types[checkReference(reference)];
+	}
+
+	public long getFromItemID(int reference)
+	{
+		return fromItemIDs[checkReference(reference)];
+	}
+
+	public long[] getToItemIDs(int reference)
+	{
+		checkReference(reference);
+		return Arrays.copyOfRange(toItemIDs, toItemStarts[reference], toItemStarts[reference + 1]);
+	}
+
+	private int checkReference(int reference)
+	{
+		if (reference < 0 || reference >= referenceCount) throw new IndexOutOfBoundsException("Reference: " + reference);
+		return reference;
+	}
+}
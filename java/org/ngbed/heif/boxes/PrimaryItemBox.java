@@ -26,4 +26,9 @@ public class PrimaryItemBox extends FullBox
 		
 		countBytesRead = reader.getPosition() - offset;
 	}
+
+	public long getItemID()
+	{
+		return itemID;
+	}
 }
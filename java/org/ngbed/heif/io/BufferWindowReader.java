@@ -0,0 +1,80 @@
+package org.ngbed.heif.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.drew.lang.BufferBoundsException;
+
+/**
+ * A metadata-extractor {@link com.drew.lang.RandomAccessReader} over a window
+ * of a {@link ByteBuffer}, from its position to its limit, so that drew's
+ * readers (such as {@link com.drew.metadata.exif.ExifReader}) can decode item
+ * data in place, without it being copied into an array first.
+ */
+public class BufferWindowReader extends com.drew.lang.RandomAccessReader
+{
+	private final ByteBuffer _buffer;
+	private final int _baseOffset;
+
+	public BufferWindowReader(ByteBuffer buffer)
+	{
+		this(buffer, 0);
+	}
+
+	/**
+	 * @param baseOffset the offset of the window in the data it was taken from,
+	 *                   as reported by {@link #toUnshiftedOffset(int)}
+	 */
+	public BufferWindowReader(ByteBuffer buffer, int baseOffset)
+	{
+		if (buffer == null) throw new NullPointerException();
+		if (baseOffset < 0) throw new IllegalArgumentException("Must be zero or greater.");
+
+		_buffer = buffer.slice();
+		_baseOffset = baseOffset;
+	}
+
+	@Override
+	public int toUnshiftedOffset(int localOffset)
+	{
+		return localOffset + _baseOffset;
+	}
+
+	@Override
+	public long getLength()
+	{
+		return _buffer.limit();
+	}
+
+	@Override
+	public byte getByte(int index) throws IOException
+	{
+		validateIndex(index, 1);
+		return _buffer.get(index);
+	}
+
+	@Override
+	public byte[] getBytes(int index, int count) throws IOException
+	{
+		validateIndex(index, count);
+
+		byte[] bytes = new byte[count];
+		ByteBuffer source = _buffer.duplicate();
+		source.position(index);
+		source.get(bytes);
+		return bytes;
+	}
+
+	@Override
+	protected boolean isValidIndex(int index, int bytesRequested) throws IOException
+	{
+		return bytesRequested >= 0 && index >= 0 && (long) index + (long) bytesRequested - 1L < _buffer.limit();
+	}
+
+	@Override
+	protected void validateIndex(int index, int bytesRequested) throws IOException
+	{
+		if (!isValidIndex(index, bytesRequested))
+			throw new BufferBoundsException(toUnshiftedOffset(index), bytesRequested, _buffer.limit());
+	}
+}
@@ -0,0 +1,37 @@
+package org.ngbed.heif.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Page-cached reader over a {@link RandomAccessFile}. Unlike
+ * {@link RandomAccessFileReader}, which reads the file one byte at a time, this
+ * reader fetches whole pages and decodes multi-byte values from memory.
+ */
+public class BufferedRandomAccessFileReader extends BufferedRandomAccessReader
+{
+	private final RandomAccessFile _file;
+	private long _filePointer = -1;
+
+	public BufferedRandomAccessFileReader(RandomAccessFile file) throws IOException
+	{
+		this(file, DEFAULT_PAGE_SIZE, DEFAULT_PAGE_COUNT);
+	}
+
+	public BufferedRandomAccessFileReader(RandomAccessFile file, int pageSize, int pageCount) throws IOException
+	{
+		super(file.length(), pageSize, pageCount);
+
+		_file = file;
+	}
+
+	@Override
+	protected int read(long position, byte[] buffer, int offset, int length) throws IOException
+	{
+		if (position != _filePointer) _file.seek(position);
+
+		int bytesRead = _file.read(buffer, offset, length);
+		_filePointer = bytesRead < 0 ? -1 : position + bytesRead;
+		return bytesRead;
+	}
+}
@@ -0,0 +1,327 @@
+package org.ngbed.heif.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import com.drew.lang.BufferBoundsException;
+
+/**
+ * A {@link RandomAccessReader} that serves reads from a small cache of
+ * fixed-size pages, so that box headers and item tables are decoded from memory
+ * rather than with one call to the underlying source per byte.
+ * <p>
+ * Pages are evicted least-recently-used first. Reads of at least one page in
+ * length bypass the cache and go straight to the underlying source.
+ * <p>
+ * Subclasses only have to supply {@link #read(long, byte[], int, int)}.
+ */
+public abstract class BufferedRandomAccessReader extends RandomAccessReader
+{
+	public static final int DEFAULT_PAGE_SIZE = 8192;
+	public static final int DEFAULT_PAGE_COUNT = 8;
+
+	private final long _length;
+	private final int _pageSize;
+	private final int _pageShift;
+
+	private final long[] _pageIndexes;
+	private final byte[][] _pages;
+	private final int[] _pageLengths;
+	private final long[] _pageUsage;
+	private long _usageCounter;
+
+	private byte[] _currentPage;
+	private long _currentPageStart = -1;
+	private int _currentPageLength;
+
+	private long _currentIndex;
+
+	/**
+	 * @param length    the length of the underlying data source, in bytes
+	 * @param pageSize  the size of each cached page; must be a power of two
+	 * @param pageCount the maximum number of pages held in memory
+	 */
+	protected BufferedRandomAccessReader(long length, int pageSize, int pageCount)
+	{
+		if (length < 0) throw new IllegalArgumentException("length must be zero or greater.");
+		if (pageSize <= 0 || (pageSize & (pageSize - 1)) != 0)
+			throw new IllegalArgumentException("pageSize must be a positive power of two.");
+		if (pageCount <= 0) throw new IllegalArgumentException("pageCount must be greater than zero.");
+
+		_length = length;
+		_pageSize = pageSize;
+		_pageShift = Integer.numberOfTrailingZeros(pageSize);
+
+		_pageIndexes = new long[pageCount];
+		_pages = new byte[pageCount][];
+		_pageLengths = new int[pageCount];
+		_pageUsage = new long[pageCount];
+		for (int i = 0; i < pageCount; i++)
+		{
+			_pageIndexes[i] = -1;
+		}
+	}
+
+	/**
+	 * Reads up to <code>length</code> bytes from the underlying source, starting
+	 * at <code>position</code>.
+	 *
+	 * @return the number of bytes read, or -1 if <code>position</code> is at or
+	 *         beyond the end of the source
+	 */
+	protected abstract int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+	public int getPageSize()
+	{
+		return _pageSize;
+	}
+
+	@Override
+	public long getLength()
+	{
+		return _length;
+	}
+
+	@Override
+	public byte getByte(long index) throws IOException
+	{
+		int pageOffset = loadPage(index);
+		_currentIndex = index + 1;
+		return _currentPage[pageOffset];
+	}
+
+	@Override
+	public byte[] getBytes(long index, long count) throws IOException
+	{
+		validateIndex(index, count);
+
+		byte[] bytes = new byte[(int) count];
+		if (count >= _pageSize)
+		{
+			readFully(index, bytes, 0, (int) count);
+		}
+		else
+		{
+			int copied = 0;
+			while (copied < count)
+			{
+				int pageOffset = loadPage(index + copied);
+				int chunk = Math.min(_currentPageLength - pageOffset, (int) count - copied);
+				System.arraycopy(_currentPage, pageOffset, bytes, copied, chunk);
+				copied += chunk;
+			}
+		}
+		_currentIndex = index + count;
+		return bytes;
+	}
+
+	@Override
+	public int getUInt16(long index) throws IOException
+	{
+		validateIndex(index, 2);
+
+		int pageOffset = loadPage(index);
+		if (pageOffset + 2 > _currentPageLength) return super.getUInt16(index);
+
+		byte[] page = _currentPage;
+		_currentIndex = index + 2;
+		if (isMotorolaByteOrder())
+		{
+			return (page[pageOffset] << 8 & 0xFF00) | (page[pageOffset + 1] & 0xFF);
+		}
+		else
+		{
+			return (page[pageOffset + 1] << 8 & 0xFF00) | (page[pageOffset] & 0xFF);
+		}
+	}
+
+	@Override
+	public short getInt16(long index) throws IOException
+	{
+		return (short) getUInt16(index);
+	}
+
+	@Override
+	public int getInt24(long index) throws IOException
+	{
+		validateIndex(index, 3);
+
+		int pageOffset = loadPage(index);
+		if (pageOffset + 3 > _currentPageLength) return super.getInt24(index);
+
+		byte[] page = _currentPage;
+		_currentIndex = index + 3;
+		if (isMotorolaByteOrder())
+		{
+			return (page[pageOffset] << 16 & 0xFF0000) | (page[pageOffset + 1] << 8 & 0xFF00)
+					| (page[pageOffset + 2] & 0xFF);
+		}
+		else
+		{
+			return (page[pageOffset + 2] << 16 & 0xFF0000) | (page[pageOffset + 1] << 8 & 0xFF00)
+					| (page[pageOffset] & 0xFF);
+		}
+	}
+
+	@Override
+	public long getUInt32(long index) throws IOException
+	{
+		return getInt32(index) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public int getInt32(long index) throws IOException
+	{
+		validateIndex(index, 4);
+
+		int pageOffset = loadPage(index);
+		if (pageOffset + 4 > _currentPageLength) return super.getInt32(index);
+
+		byte[] page = _currentPage;
+		_currentIndex = index + 4;
+		if (isMotorolaByteOrder())
+		{
+			return (page[pageOffset] << 24) | (page[pageOffset + 1] << 16 & 0xFF0000)
+					| (page[pageOffset + 2] << 8 & 0xFF00) | (page[pageOffset + 3] & 0xFF);
+		}
+		else
+		{
+			return (page[pageOffset + 3] << 24) | (page[pageOffset + 2] << 16 & 0xFF0000)
+					| (page[pageOffset + 1] << 8 & 0xFF00) | (page[pageOffset] & 0xFF);
+		}
+	}
+
+	@Override
+	public long getInt64(long index) throws IOException
+	{
+		validateIndex(index, 8);
+
+		int pageOffset = loadPage(index);
+		if (pageOffset + 8 > _currentPageLength) return super.getInt64(index);
+
+		long high;
+		long low;
+		if (isMotorolaByteOrder())
+		{
+			high = getInt32(index);
+			low = getInt32(index + 4) & 0xFFFFFFFFL;
+		}
+		else
+		{
+			low = getInt32(index) & 0xFFFFFFFFL;
+			high = getInt32(index + 4);
+		}
+		return (high << 32) | low;
+	}
+
+	@Override
+	public void seek(long index) throws IOException
+	{
+		_currentIndex = index;
+	}
+
+	@Override
+	public long getPosition() throws IOException
+	{
+		return _currentIndex;
+	}
+
+	@Override
+	protected boolean isValidIndex(long index, long bytesRequested) throws IOException
+	{
+		return bytesRequested >= 0 && index >= 0 && index + bytesRequested - 1L < _length;
+	}
+
+	@Override
+	protected void validateIndex(final long index, final long bytesRequested) throws IOException
+	{
+		if (!isValidIndex(index, bytesRequested))
+			throw new BufferBoundsException((int) index, (int) bytesRequested, _length);
+	}
+
+	@Override
+	public void skip(long n) throws IOException
+	{
+		if (n < 0) throw new IllegalArgumentException("n must be zero or greater.");
+
+		long skippedCount = skipInternal(n);
+
+		if (skippedCount != n) throw new EOFException(
+				String.format("Unable to skip. Requested %d bytes but skipped %d.", n, skippedCount));
+	}
+
+	@Override
+	public boolean trySkip(long n) throws IOException
+	{
+		if (n < 0) throw new IllegalArgumentException("n must be zero or greater.");
+
+		return skipInternal(n) == n;
+	}
+
+	private long skipInternal(long n)
+	{
+		long skipped = Math.max(0, Math.min(n, _length - _currentIndex));
+		_currentIndex += skipped;
+		return skipped;
+	}
+
+	/**
+	 * Makes the page holding <code>index</code> current, loading it from the
+	 * underlying source if it is not cached.
+	 *
+	 * @return the offset of <code>index</code> within the current page
+	 */
+	private int loadPage(long index) throws IOException
+	{
+		long pageStart = (index >> _pageShift) << _pageShift;
+		if (pageStart != _currentPageStart)
+		{
+			if (index < 0 || index >= _length)
+				throw new BufferBoundsException("Unexpected end of file encountered.");
+
+			long pageIndex = index >> _pageShift;
+			int slot = -1;
+			int victim = 0;
+			for (int i = 0; i < _pageIndexes.length; i++)
+			{
+				if (_pageIndexes[i] == pageIndex)
+				{
+					slot = i;
+					break;
+				}
+				if (_pageUsage[i] < _pageUsage[victim]) victim = i;
+			}
+
+			if (slot == -1)
+			{
+				slot = victim;
+				if (_pages[slot] == null) _pages[slot] = new byte[_pageSize];
+				int pageLength = (int) Math.min(_pageSize, _length - pageStart);
+				_pageIndexes[slot] = -1;
+				readFully(pageStart, _pages[slot], 0, pageLength);
+				_pageIndexes[slot] = pageIndex;
+				_pageLengths[slot] = pageLength;
+			}
+
+			_pageUsage[slot] = ++_usageCounter;
+			_currentPage = _pages[slot];
+			_currentPageStart = pageStart;
+			_currentPageLength = _pageLengths[slot];
+		}
+
+		int pageOffset = (int) (index - pageStart);
+		if (pageOffset >= _currentPageLength) throw new BufferBoundsException("Unexpected end of file encountered.");
+		return pageOffset;
+	}
+
+	private void readFully(long position, byte[] buffer, int offset, int length) throws IOException
+	{
+		int total = 0;
+		while (total < length)
+		{
+			int bytesRead = read(position + total, buffer, offset + total, length - total);
+			if (bytesRead < 0) throw new BufferBoundsException("Unexpected end of file encountered.");
+			total += bytesRead;
+		}
+	}
+}
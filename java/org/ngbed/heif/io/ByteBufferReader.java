@@ -0,0 +1,181 @@
+package org.ngbed.heif.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.drew.lang.BufferBoundsException;
+
+/**
+ * Reader over a {@link ByteBuffer}, typically a {@link MappedByteBuffer}
+ * obtained with {@link #map(FileChannel)}. Primitive values are read directly
+ * from the buffer using its absolute accessors, so no bytes are copied and the
+ * position is tracked without touching the underlying file.
+ */
+public class ByteBufferReader extends RandomAccessReader
+{
+	private final ByteBuffer _buffer;
+	private final int _length;
+	private long _currentIndex;
+
+	public ByteBufferReader(ByteBuffer buffer)
+	{
+		if (buffer == null) throw new NullPointerException();
+
+		_buffer = buffer.slice();
+		_buffer.order(ByteOrder.BIG_ENDIAN);
+		_length = _buffer.remaining();
+	}
+
+	/**
+	 * Maps the whole of <code>channel</code> read-only into memory. The mapping
+	 * stays valid after the channel is closed.
+	 */
+	public static ByteBufferReader map(FileChannel channel) throws IOException
+	{
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) throw new IOException("File is too large to be mapped: " + size + " bytes.");
+
+		return new ByteBufferReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+	}
+
+	@Override
+	public void setMotorolaByteOrder(boolean motorolaByteOrder)
+	{
+		super.setMotorolaByteOrder(motorolaByteOrder);
+		_buffer.order(motorolaByteOrder ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Override
+	public long getLength()
+	{
+		return _length;
+	}
+
+	@Override
+	public byte getByte(long index) throws IOException
+	{
+		validateIndex(index, 1);
+
+		_currentIndex = index + 1;
+		return _buffer.get((int) index);
+	}
+
+	@Override
+	public byte[] getBytes(long index, long count) throws IOException
+	{
+		validateIndex(index, count);
+
+		byte[] bytes = new byte[(int) count];
+		ByteBuffer source = _buffer.duplicate();
+		source.position((int) index);
+		source.get(bytes);
+		_currentIndex = index + count;
+		return bytes;
+	}
+
+	@Override
+	public ByteBuffer getByteBuffer(long index, long count) throws IOException
+	{
+		validateIndex(index, count);
+
+		ByteBuffer view = _buffer.asReadOnlyBuffer();
+		view.position((int) index);
+		view.limit((int) (index + count));
+		_currentIndex = index + count;
+		return view.slice();
+	}
+
+	@Override
+	public int getUInt16(long index) throws IOException
+	{
+		return getInt16(index) & 0xFFFF;
+	}
+
+	@Override
+	public short getInt16(long index) throws IOException
+	{
+		validateIndex(index, 2);
+
+		_currentIndex = index + 2;
+		return _buffer.getShort((int) index);
+	}
+
+	@Override
+	public long getUInt32(long index) throws IOException
+	{
+		return getInt32(index) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public int getInt32(long index) throws IOException
+	{
+		validateIndex(index, 4);
+
+		_currentIndex = index + 4;
+		return _buffer.getInt((int) index);
+	}
+
+	@Override
+	public long getInt64(long index) throws IOException
+	{
+		validateIndex(index, 8);
+
+		_currentIndex = index + 8;
+		return _buffer.getLong((int) index);
+	}
+
+	@Override
+	public void seek(long index) throws IOException
+	{
+		_currentIndex = index;
+	}
+
+	@Override
+	public long getPosition() throws IOException
+	{
+		return _currentIndex;
+	}
+
+	@Override
+	protected boolean isValidIndex(long index, long bytesRequested) throws IOException
+	{
+		return bytesRequested >= 0 && index >= 0 && index + bytesRequested - 1L < _length;
+	}
+
+	@Override
+	protected void validateIndex(final long index, final long bytesRequested) throws IOException
+	{
+		if (!isValidIndex(index, bytesRequested))
+			throw new BufferBoundsException((int) index, (int) bytesRequested, _length);
+	}
+
+	@Override
+	public void skip(long n) throws IOException
+	{
+		if (n < 0) throw new IllegalArgumentException("n must be zero or greater.");
+
+		long skippedCount = skipInternal(n);
+
+		if (skippedCount != n) throw new EOFException(
+				String.format("Unable to skip. Requested %d bytes but skipped %d.", n, skippedCount));
+	}
+
+	@Override
+	public boolean trySkip(long n) throws IOException
+	{
+		if (n < 0) throw new IllegalArgumentException("n must be zero or greater.");
+
+		return skipInternal(n) == n;
+	}
+
+	private long skipInternal(long n)
+	{
+		long skipped = Math.max(0, Math.min(n, _length - _currentIndex));
+		_currentIndex += skipped;
+		return skipped;
+	}
+}
@@ -0,0 +1,26 @@
+package org.ngbed.heif.io;
+
+/**
+ * A contiguous span of bytes in a data source.
+ */
+public class ByteRange
+{
+	public long offset;
+	public long length;
+
+	public ByteRange(long offset, long length)
+	{
+		this.offset = offset;
+		this.length = length;
+	}
+
+	public long getEnd()
+	{
+		return offset + length;
+	}
+
+	public String toString()
+	{
+		return "[" + offset + ", " + getEnd() + ")";
+	}
+}
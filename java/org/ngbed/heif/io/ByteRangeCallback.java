@@ -0,0 +1,18 @@
+package org.ngbed.heif.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the bytes requested through
+ * {@link RandomAccessReader#readBytesDeferred(long, long, ByteRangeCallback)}.
+ */
+public interface ByteRangeCallback
+{
+	/**
+	 * @param bytes the requested bytes, from its position to its limit. It may
+	 *              be a view of the reader's own storage, and is only valid
+	 *              for the duration of the call.
+	 */
+	void onBytes(long index, ByteBuffer bytes) throws IOException;
+}
@@ -0,0 +1,43 @@
+package org.ngbed.heif.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Page-cached reader over a read-only {@link SeekableByteChannel}.
+ * <p>
+ * When the channel is a {@link FileChannel} pages are fetched with positional
+ * reads, which leave the channel position untouched, so several readers can
+ * share one open channel. Other channel types are positioned before each read
+ * and must not be shared between threads.
+ */
+public class ChannelReader extends BufferedRandomAccessReader
+{
+	private final SeekableByteChannel _channel;
+	private final FileChannel _fileChannel;
+
+	public ChannelReader(SeekableByteChannel channel) throws IOException
+	{
+		this(channel, DEFAULT_PAGE_SIZE, DEFAULT_PAGE_COUNT);
+	}
+
+	public ChannelReader(SeekableByteChannel channel, int pageSize, int pageCount) throws IOException
+	{
+		super(channel.size(), pageSize, pageCount);
+
+		_channel = channel;
+		_fileChannel = channel instanceof FileChannel ? (FileChannel) channel : null;
+	}
+
+	@Override
+	protected int read(long position, byte[] buffer, int offset, int length) throws IOException
+	{
+		ByteBuffer target = ByteBuffer.wrap(buffer, offset, length);
+		if (_fileChannel != null) return _fileChannel.read(target, position);
+
+		_channel.position(position);
+		return _channel.read(target);
+	}
+}
@@ -0,0 +1,69 @@
+package org.ngbed.heif.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.drew.lang.BufferBoundsException;
+
+/**
+ * {@link RangeFetcher} over a local file, standing in for a remote store. It
+ * counts the requests and bytes it serves so that fetch plans can be checked.
+ */
+public class FileRangeFetcher implements RangeFetcher
+{
+	private final FileChannel _channel;
+	private int _batchCount;
+	private int _rangeCount;
+	private long _bytesFetched;
+
+	public FileRangeFetcher(FileChannel channel)
+	{
+		if (channel == null) throw new NullPointerException();
+
+		_channel = channel;
+	}
+
+	@Override
+	public long getLength() throws IOException
+	{
+		return _channel.size();
+	}
+
+	@Override
+	public List<byte[]> fetch(List<ByteRange> ranges) throws IOException
+	{
+		List<byte[]> results = new ArrayList<byte[]>(ranges.size());
+		for (ByteRange range : ranges)
+		{
+			ByteBuffer buffer = ByteBuffer.allocate((int) range.length);
+			while (buffer.hasRemaining())
+			{
+				int bytesRead = _channel.read(buffer, range.offset + buffer.position());
+				if (bytesRead < 0) throw new BufferBoundsException("Unexpected end of file encountered.");
+			}
+			results.add(buffer.array());
+			_bytesFetched += range.length;
+		}
+		_rangeCount += ranges.size();
+		_batchCount++;
+		return results;
+	}
+
+	public int getBatchCount()
+	{
+		return _batchCount;
+	}
+
+	public int getRangeCount()
+	{
+		return _rangeCount;
+	}
+
+	public long getBytesFetched()
+	{
+		return _bytesFetched;
+	}
+}
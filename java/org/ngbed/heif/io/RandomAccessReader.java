@@ -3,6 +3,7 @@ package org.ngbed.heif.io;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 import com.drew.lang.BufferBoundsException;
@@ -57,6 +58,51 @@ public abstract class RandomAccessReader
 		return getBytes(this.getPosition(), count);
 	}
 
+	/**
+	 * Returns the requested bytes as a buffer, in the same way as
+	 * {@link #getBytes(long, long)}. Implementations holding the data in
+	 * memory return a read-only view of it instead of a copy; the default
+	 * copies.
+	 */
+	public ByteBuffer getByteBuffer(long index, long count) throws IOException
+	{
+		return ByteBuffer.wrap(getBytes(index, count));
+	}
+
+	/**
+	 * Hands the required number of bytes from the specified index to
+	 * <code>callback</code>, without moving the current position.
+	 * <p>
+	 * Random access implementations deliver the bytes before returning.
+	 * Sequential implementations may deliver them later, once the underlying
+	 * stream has reached them.
+	 *
+	 * @param index    The index from which the bytes begins in the underlying
+	 *                 source
+	 * @param count    The number of bytes to be delivered
+	 * @param callback Receives the bytes
+	 * @return false if the bytes can never be delivered by this reader
+	 * @throws IOException if the bytes are unable to be read
+	 */
+	public boolean readBytesDeferred(long index, long count, ByteRangeCallback callback) throws IOException
+	{
+		long position = getPosition();
+		ByteBuffer bytes = getByteBuffer(index, count);
+		seek(position);
+		callback.onBytes(index, bytes);
+		return true;
+	}
+
+	/**
+	 * @return true while bytes requested through
+	 *         {@link #readBytesDeferred(long, long, ByteRangeCallback)} have not
+	 *         been delivered yet
+	 */
+	public boolean hasPendingRanges()
+	{
+		return false;
+	}
+
 	/**
 	 * Skips forward in the sequence. If the sequence ends, an
 	 * {@link EOFException} is thrown.
@@ -99,6 +145,16 @@ public abstract class RandomAccessReader
 
 	protected abstract boolean isValidIndex(long index, long bytesRequested) throws IOException;
 
+	/**
+	 * Tests whether <code>count</code> bytes are available from the current
+	 * position, without reading them or moving the position. Unlike reading
+	 * past the end, this works for sources of unknown length.
+	 */
+	public boolean canRead(long count) throws IOException
+	{
+		return isValidIndex(getPosition(), count);
+	}
+
 	/**
 	 * Returns the length of the data source in bytes.
 	 * <p>
@@ -0,0 +1,320 @@
+package org.ngbed.heif.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.drew.lang.BufferBoundsException;
+
+/**
+ * Reader over a remote object that is only ever partially downloaded.
+ * <p>
+ * Ranges are normally brought in ahead of time with
+ * {@link #prefetch(List, long)}, which coalesces nearby ranges and fetches
+ * everything missing in one batch. A read that falls outside every fetched range
+ * triggers a single on-demand fetch of at least {@link #MIN_FETCH_SIZE} bytes.
+ */
+public class RangeFetchReader extends RandomAccessReader
+{
+	public static final int MIN_FETCH_SIZE = 4096;
+
+	private final RangeFetcher _fetcher;
+	private final long _length;
+	private final ArrayList<Segment> _segments = new ArrayList<Segment>();
+	private Segment _currentSegment;
+	private long _bytesHeld;
+	private long _currentIndex;
+
+	public RangeFetchReader(RangeFetcher fetcher) throws IOException
+	{
+		if (fetcher == null) throw new NullPointerException();
+
+		_fetcher = fetcher;
+		_length = fetcher.getLength();
+	}
+
+	/**
+	 * Makes sure every range is held locally. Ranges separated by no more than
+	 * <code>maxGap</code> bytes are merged, trading a few unwanted bytes for
+	 * fewer requests, and bytes already held are not fetched again.
+	 */
+	public void prefetch(List<ByteRange> ranges, long maxGap) throws IOException
+	{
+		ArrayList<ByteRange> wanted = new ArrayList<ByteRange>(ranges.size());
+		for (ByteRange range : ranges)
+		{
+			long start = Math.max(0, range.offset);
+			long end = Math.min(_length, range.getEnd());
+			if (start < end) wanted.add(new ByteRange(start, end - start));
+		}
+		Collections.sort(wanted, new Comparator<ByteRange>()
+		{
+			@Override
+			public int compare(ByteRange a, ByteRange b)
+			{
+				return Long.compare(a.offset, b.offset);
+			}
+		});
+
+		ArrayList<ByteRange> merged = new ArrayList<ByteRange>();
+		for (ByteRange range : wanted)
+		{
+			ByteRange last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			if (last != null && range.offset <= last.getEnd() + maxGap)
+			{
+				last.length = Math.max(last.getEnd(), range.getEnd()) - last.offset;
+			}
+			else
+			{
+				merged.add(range);
+			}
+		}
+
+		ArrayList<ByteRange> missing = new ArrayList<ByteRange>();
+		for (ByteRange range : merged)
+		{
+			addMissing(range, missing);
+		}
+		fetch(missing);
+	}
+
+	/**
+	 * @return the number of bytes downloaded so far
+	 */
+	public long getBytesHeld()
+	{
+		return _bytesHeld;
+	}
+
+	@Override
+	public long getLength()
+	{
+		return _length;
+	}
+
+	@Override
+	public byte getByte(long index) throws IOException
+	{
+		Segment segment = segmentFor(index, 1);
+		_currentIndex = index + 1;
+		return segment.data[(int) (index - segment.offset)];
+	}
+
+	@Override
+	public byte[] getBytes(long index, long count) throws IOException
+	{
+		validateIndex(index, count);
+
+		byte[] bytes = new byte[(int) count];
+		int copied = 0;
+		while (copied < count)
+		{
+			Segment segment = segmentFor(index + copied, count - copied);
+			int segmentOffset = (int) (index + copied - segment.offset);
+			int chunk = (int) Math.min(segment.data.length - segmentOffset, count - copied);
+			System.arraycopy(segment.data, segmentOffset, bytes, copied, chunk);
+			copied += chunk;
+		}
+		_currentIndex = index + count;
+		return bytes;
+	}
+
+	/**
+	 * Returns a view of the fetched data when one segment holds the whole
+	 * range.
+	 */
+	@Override
+	public ByteBuffer getByteBuffer(long index, long count) throws IOException
+	{
+		validateIndex(index, count);
+
+		Segment segment = segmentFor(index, count);
+		int offset = (int) (index - segment.offset);
+		if (offset + count > segment.data.length) return super.getByteBuffer(index, count);
+
+		_currentIndex = index + count;
+		return ByteBuffer.wrap(segment.data, offset, (int) count).slice().asReadOnlyBuffer();
+	}
+
+	@Override
+	public int getUInt16(long index) throws IOException
+	{
+		validateIndex(index, 2);
+
+		Segment segment = segmentFor(index, 2);
+		int offset = (int) (index - segment.offset);
+		if (!isMotorolaByteOrder() || offset + 2 > segment.data.length) return super.getUInt16(index);
+
+		_currentIndex = index + 2;
+		return (segment.data[offset] << 8 & 0xFF00) | (segment.data[offset + 1] & 0xFF);
+	}
+
+	@Override
+	public long getUInt32(long index) throws IOException
+	{
+		validateIndex(index, 4);
+
+		Segment segment = segmentFor(index, 4);
+		int offset = (int) (index - segment.offset);
+		if (!isMotorolaByteOrder() || offset + 4 > segment.data.length) return super.getUInt32(index);
+
+		byte[] data = segment.data;
+		_currentIndex = index + 4;
+		return ((long) data[offset] << 24 & 0xFF000000L) | (data[offset + 1] << 16 & 0xFF0000L)
+				| (data[offset + 2] << 8 & 0xFF00L) | (data[offset + 3] & 0xFFL);
+	}
+
+	@Override
+	public void seek(long index) throws IOException
+	{
+		_currentIndex = index;
+	}
+
+	@Override
+	public long getPosition() throws IOException
+	{
+		return _currentIndex;
+	}
+
+	@Override
+	protected boolean isValidIndex(long index, long bytesRequested) throws IOException
+	{
+		return bytesRequested >= 0 && index >= 0 && index + bytesRequested - 1L < _length;
+	}
+
+	@Override
+	protected void validateIndex(final long index, final long bytesRequested) throws IOException
+	{
+		if (!isValidIndex(index, bytesRequested))
+			throw new BufferBoundsException((int) index, (int) bytesRequested, _length);
+	}
+
+	@Override
+	public void skip(long n) throws IOException
+	{
+		if (n < 0) throw new IllegalArgumentException("n must be zero or greater.");
+
+		long skippedCount = skipInternal(n);
+
+		if (skippedCount != n) throw new EOFException(
+				String.format("Unable to skip. Requested %d bytes but skipped %d.", n, skippedCount));
+	}
+
+	@Override
+	public boolean trySkip(long n) throws IOException
+	{
+		if (n < 0) throw new IllegalArgumentException("n must be zero or greater.");
+
+		return skipInternal(n) == n;
+	}
+
+	private long skipInternal(long n)
+	{
+		long skipped = Math.max(0, Math.min(n, _length - _currentIndex));
+		_currentIndex += skipped;
+		return skipped;
+	}
+
+	/**
+	 * Returns the segment holding <code>index</code>, fetching up to
+	 * <code>count</code> bytes (and at least {@link #MIN_FETCH_SIZE}) from there
+	 * if nothing holds it yet.
+	 */
+	private Segment segmentFor(long index, long count) throws IOException
+	{
+		Segment segment = _currentSegment;
+		if (segment != null && index >= segment.offset && index < segment.offset + segment.data.length)
+			return segment;
+
+		if (index < 0 || index >= _length) throw new BufferBoundsException("Unexpected end of file encountered.");
+
+		int position = findSegment(index);
+		if (position < 0)
+		{
+			long end = Math.min(_length, index + Math.max(count, MIN_FETCH_SIZE));
+			int next = -position - 1;
+			if (next < _segments.size()) end = Math.min(end, _segments.get(next).offset);
+
+			ArrayList<ByteRange> missing = new ArrayList<ByteRange>(1);
+			missing.add(new ByteRange(index, end - index));
+			fetch(missing);
+			position = findSegment(index);
+		}
+
+		_currentSegment = _segments.get(position);
+		return _currentSegment;
+	}
+
+	private void fetch(List<ByteRange> ranges) throws IOException
+	{
+		if (ranges.isEmpty()) return;
+
+		List<byte[]> results = _fetcher.fetch(ranges);
+		for (int i = 0; i < ranges.size(); i++)
+		{
+			Segment segment = new Segment(ranges.get(i).offset, results.get(i));
+			int position = findSegment(segment.offset);
+			_segments.add(-position - 1, segment);
+			_bytesHeld += segment.data.length;
+		}
+	}
+
+	private void addMissing(ByteRange range, List<ByteRange> missing)
+	{
+		long cursor = range.offset;
+		for (Segment segment : _segments)
+		{
+			long segmentEnd = segment.offset + segment.data.length;
+			if (segmentEnd <= cursor) continue;
+			if (segment.offset >= range.getEnd()) break;
+
+			if (segment.offset > cursor) missing.add(new ByteRange(cursor, segment.offset - cursor));
+			cursor = segmentEnd;
+		}
+		if (cursor < range.getEnd()) missing.add(new ByteRange(cursor, range.getEnd() - cursor));
+	}
+
+	/**
+	 * @return the index of the segment holding <code>index</code>, or
+	 *         <code>-(insertion point) - 1</code> if no segment holds it
+	 */
+	private int findSegment(long index)
+	{
+		int low = 0;
+		int high = _segments.size() - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			Segment segment = _segments.get(mid);
+			if (index < segment.offset)
+			{
+				high = mid - 1;
+			}
+			else if (index >= segment.offset + segment.data.length)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+		return -low - 1;
+	}
+
+	private static class Segment
+	{
+		final long offset;
+		final byte[] data;
+
+		Segment(long offset, byte[] data)
+		{
+			this.offset = offset;
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package org.ngbed.heif.io;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Source of byte ranges from a remote object, such as an HTTP server or object
+ * store supporting range requests.
+ */
+public interface RangeFetcher
+{
+	/**
+	 * @return the total length of the object, in bytes
+	 */
+	long getLength() throws IOException;
+
+	/**
+	 * Fetches every range in a single batch, where the transport allows it.
+	 *
+	 * @param ranges non-overlapping ranges, in ascending offset order
+	 * @return the bytes of each range, in the same order as <code>ranges</code>
+	 */
+	List<byte[]> fetch(List<ByteRange> ranges) throws IOException;
+}
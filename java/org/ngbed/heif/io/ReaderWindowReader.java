@@ -0,0 +1,73 @@
+package org.ngbed.heif.io;
+
+import java.io.IOException;
+
+import com.drew.lang.BufferBoundsException;
+
+/**
+ * A metadata-extractor {@link com.drew.lang.RandomAccessReader} over a window
+ * of one of this library's {@link RandomAccessReader}s, for data that is not
+ * held in one buffer, such as an item split over several extents. Each read is
+ * passed on to the underlying reader, whose position it moves.
+ */
+public class ReaderWindowReader extends com.drew.lang.RandomAccessReader
+{
+	private final RandomAccessReader _reader;
+	private final long _start;
+	private final int _length;
+
+	/**
+	 * @param start  the index in <code>reader</code> of the first byte of the
+	 *               window
+	 * @param length the length of the window
+	 */
+	public ReaderWindowReader(RandomAccessReader reader, long start, long length)
+	{
+		if (reader == null) throw new NullPointerException();
+		if (start < 0 || length < 0) throw new IllegalArgumentException("Must be zero or greater.");
+		if (length > Integer.MAX_VALUE) throw new IllegalArgumentException("Window is too large: " + length + " bytes.");
+
+		_reader = reader;
+		_start = start;
+		_length = (int) length;
+	}
+
+	@Override
+	public int toUnshiftedOffset(int localOffset)
+	{
+		return localOffset;
+	}
+
+	@Override
+	public long getLength()
+	{
+		return _length;
+	}
+
+	@Override
+	public byte getByte(int index) throws IOException
+	{
+		validateIndex(index, 1);
+		return _reader.getByte(_start + index);
+	}
+
+	@Override
+	public byte[] getBytes(int index, int count) throws IOException
+	{
+		validateIndex(index, count);
+		return _reader.getBytes(_start + index, count);
+	}
+
+	@Override
+	protected boolean isValidIndex(int index, int bytesRequested) throws IOException
+	{
+		return bytesRequested >= 0 && index >= 0 && (long) index + (long) bytesRequested - 1L < _length;
+	}
+
+	@Override
+	protected void validateIndex(int index, int bytesRequested) throws IOException
+	{
+		if (!isValidIndex(index, bytesRequested))
+			throw new BufferBoundsException(index, bytesRequested, _length);
+	}
+}
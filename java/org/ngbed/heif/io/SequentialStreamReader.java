@@ -0,0 +1,293 @@
+package org.ngbed.heif.io;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import com.drew.lang.BufferBoundsException;
+
+/**
+ * Forward-only reader over an {@link InputStream}, for parsing HEIF files that
+ * are not available for random access (upload streams, object-store GETs).
+ * <p>
+ * Seeking forwards skips bytes without keeping them. Seeking backwards is not
+ * supported. Item data that lies ahead of the current position can be requested
+ * with {@link #readBytesDeferred(long, long, ByteRangeCallback)}; those ranges,
+ * and nothing else, are retained while the stream passes over them and handed
+ * to their callbacks once complete. Pending ranges and reads draw on one budget
+ * of <code>maxRetainedBytes</code>: a read must fit in what the pending ranges
+ * leave, and a range gives its bytes back once handed over.
+ */
+public class SequentialStreamReader extends RandomAccessReader
+{
+	private static final int SCRATCH_SIZE = 8192;
+
+	private final InputStream _stream;
+	private final long _maxRetainedBytes;
+	private final ArrayList<PendingRange> _pendingRanges = new ArrayList<PendingRange>();
+	private byte[] _scratch;
+	private long _retainedBytes;
+	private long _currentIndex;
+
+	public SequentialStreamReader(InputStream stream, long maxRetainedBytes)
+	{
+		if (stream == null) throw new NullPointerException();
+		if (maxRetainedBytes < 0) throw new IllegalArgumentException("maxRetainedBytes must be zero or greater.");
+
+		_stream = stream instanceof BufferedInputStream ? stream : new BufferedInputStream(stream);
+		_maxRetainedBytes = maxRetainedBytes;
+	}
+
+	/**
+	 * The length of a stream is not known in advance.
+	 *
+	 * @return -1
+	 */
+	@Override
+	public long getLength()
+	{
+		return -1;
+	}
+
+	@Override
+	public byte getByte(long index) throws IOException
+	{
+		seek(index);
+
+		int b = _stream.read();
+		if (b < 0) throw new BufferBoundsException("Unexpected end of stream encountered.");
+		retain(_currentIndex, (byte) b);
+		_currentIndex++;
+		return (byte) b;
+	}
+
+	@Override
+	public byte[] getBytes(long index, long count) throws IOException
+	{
+		validateIndex(index, count);
+		if (_retainedBytes + count > _maxRetainedBytes) throw new BufferBoundsException(
+				String.format("Requested %d bytes, more than the %d of %d bytes that may still be retained.", count,
+						_maxRetainedBytes - _retainedBytes, _maxRetainedBytes));
+
+		seek(index);
+
+		byte[] bytes = new byte[(int) count];
+		if (consume(count, bytes) != count) throw new BufferBoundsException("Unexpected end of stream encountered.");
+		return bytes;
+	}
+
+	@Override
+	public boolean readBytesDeferred(long index, long count, ByteRangeCallback callback) throws IOException
+	{
+		if (index < _currentIndex || count < 0) return false;
+		if (_retainedBytes + count > _maxRetainedBytes) return false;
+
+		_retainedBytes += count;
+		PendingRange range = new PendingRange(index, new byte[(int) count], callback);
+		if (count == 0)
+		{
+			callback.onBytes(index, ByteBuffer.wrap(range.bytes));
+		}
+		else
+		{
+			_pendingRanges.add(range);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean hasPendingRanges()
+	{
+		return !_pendingRanges.isEmpty();
+	}
+
+	@Override
+	public void seek(long index) throws IOException
+	{
+		if (index < _currentIndex) throw new IOException(
+				String.format("Cannot seek backwards in a sequential stream, from %d to %d.", _currentIndex, index));
+
+		if (index > _currentIndex) skip(index - _currentIndex);
+	}
+
+	@Override
+	public long getPosition() throws IOException
+	{
+		return _currentIndex;
+	}
+
+	@Override
+	protected boolean isValidIndex(long index, long bytesRequested) throws IOException
+	{
+		return bytesRequested >= 0 && index >= _currentIndex;
+	}
+
+	@Override
+	protected void validateIndex(final long index, final long bytesRequested) throws IOException
+	{
+		if (!isValidIndex(index, bytesRequested))
+			throw new BufferBoundsException((int) index, (int) bytesRequested, _currentIndex);
+	}
+
+	/**
+	 * Looks ahead on the stream, which is marked and reset, so that nothing is
+	 * consumed.
+	 */
+	@Override
+	public boolean canRead(long count) throws IOException
+	{
+		if (count < 0) return false;
+		if (count > SCRATCH_SIZE) throw new IllegalArgumentException("Can look ahead at most " + SCRATCH_SIZE + " bytes.");
+
+		if (_scratch == null) _scratch = new byte[SCRATCH_SIZE];
+		_stream.mark((int) count);
+		try
+		{
+			int available = 0;
+			while (available < count)
+			{
+				int bytesRead = _stream.read(_scratch, available, (int) count - available);
+				if (bytesRead < 0) return false;
+				available += bytesRead;
+			}
+			return true;
+		}
+		finally
+		{
+			_stream.reset();
+		}
+	}
+
+	@Override
+	public void skip(long n) throws IOException
+	{
+		if (n < 0) throw new IllegalArgumentException("n must be zero or greater.");
+
+		long skippedCount = consume(n, null);
+
+		if (skippedCount != n) throw new EOFException(
+				String.format("Unable to skip. Requested %d bytes but skipped %d.", n, skippedCount));
+	}
+
+	@Override
+	public boolean trySkip(long n) throws IOException
+	{
+		if (n < 0) throw new IllegalArgumentException("n must be zero or greater.");
+
+		return consume(n, null) == n;
+	}
+
+	/**
+	 * Moves forward <code>n</code> bytes, copying them into <code>target</code>
+	 * when given and into any pending range they overlap. Spans that no one
+	 * wants are skipped on the underlying stream.
+	 *
+	 * @return the number of bytes moved over, less than <code>n</code> only at
+	 *         the end of the stream
+	 */
+	private long consume(long n, byte[] target) throws IOException
+	{
+		long consumed = 0;
+		while (consumed < n)
+		{
+			long remaining = n - consumed;
+			if (target == null && !overlapsPendingRange(_currentIndex, remaining))
+			{
+				long skipped = _stream.skip(remaining);
+				if (skipped > 0)
+				{
+					_currentIndex += skipped;
+					consumed += skipped;
+					continue;
+				}
+			}
+
+			byte[] buffer;
+			int offset;
+			int length;
+			if (target != null)
+			{
+				buffer = target;
+				offset = (int) consumed;
+				length = (int) remaining;
+			}
+			else
+			{
+				if (_scratch == null) _scratch = new byte[SCRATCH_SIZE];
+				buffer = _scratch;
+				offset = 0;
+				length = (int) Math.min(remaining, SCRATCH_SIZE);
+			}
+
+			int bytesRead = _stream.read(buffer, offset, length);
+			if (bytesRead < 0) break;
+			retain(_currentIndex, buffer, offset, bytesRead);
+			_currentIndex += bytesRead;
+			consumed += bytesRead;
+		}
+		return consumed;
+	}
+
+	private boolean overlapsPendingRange(long index, long count)
+	{
+		for (int i = 0; i < _pendingRanges.size(); i++)
+		{
+			PendingRange range = _pendingRanges.get(i);
+			if (range.index < index + count && index < range.index + range.bytes.length) return true;
+		}
+		return false;
+	}
+
+	private void retain(long index, byte b) throws IOException
+	{
+		if (_pendingRanges.isEmpty()) return;
+
+		byte[] single = { b };
+		retain(index, single, 0, 1);
+	}
+
+	private void retain(long index, byte[] buffer, int offset, int count) throws IOException
+	{
+		for (int i = 0; i < _pendingRanges.size(); i++)
+		{
+			PendingRange range = _pendingRanges.get(i);
+			long start = Math.max(index, range.index);
+			long end = Math.min(index + count, range.index + range.bytes.length);
+			if (start >= end) continue;
+
+			System.arraycopy(buffer, offset + (int) (start - index), range.bytes, (int) (start - range.index),
+					(int) (end - start));
+			range.filled += end - start;
+			if (range.filled == range.bytes.length)
+			{
+				_pendingRanges.remove(i--);
+				try
+				{
+					range.callback.onBytes(range.index, ByteBuffer.wrap(range.bytes));
+				}
+				finally
+				{
+					_retainedBytes -= range.bytes.length;
+				}
+			}
+		}
+	}
+
+	private static class PendingRange
+	{
+		final long index;
+		final byte[] bytes;
+		final ByteRangeCallback callback;
+		long filled;
+
+		PendingRange(long index, byte[] bytes, ByteRangeCallback callback)
+		{
+			this.index = index;
+			this.bytes = bytes;
+			this.callback = callback;
+		}
+	}
+}
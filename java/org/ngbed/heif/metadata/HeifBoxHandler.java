@@ -1,42 +1,46 @@
 package org.ngbed.heif.metadata;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
 
+import org.ngbed.heif.ExtractionOptions;
 import org.ngbed.heif.HeifHandler;
 import org.ngbed.heif.HeifReader;
 import org.ngbed.heif.boxes.Box;
 import org.ngbed.heif.boxes.FileTypeBox;
+import org.ngbed.heif.boxes.FourCC;
 import org.ngbed.heif.boxes.FullBox;
 import org.ngbed.heif.boxes.HandlerBox;
 import org.ngbed.heif.io.RandomAccessReader;
 
 import com.drew.metadata.Metadata;
-import com.drew.metadata.heif.HeifBoxTypes;
-import com.drew.metadata.heif.HeifContainerTypes;
 
 public class HeifBoxHandler extends HeifHandler
 {
 	private HeifHandlerFactory handlerFactory = new HeifHandlerFactory(this);
+	private boolean fileTypeProcessed = false;
+	private boolean metaProcessed = false;
 
 	public HeifBoxHandler(Metadata metadata)
 	{
 		super(metadata);
 	}
 
+	public HeifBoxHandler(Metadata metadata, ExtractionOptions options)
+	{
+		super(metadata, options);
+	}
+
 	@Override
 	public boolean shouldAcceptContainer( Box box)
 	{
-		List<String> boxes = Arrays.asList(HeifContainerTypes.BOX_METADATA);
-		return boxes.contains(box.type);
+		return box.type == FourCC.META && options.isMetaWanted();
 	}
 
 
 	@Override
 	public void processContainer(int depth, Box box,  RandomAccessReader reader) throws IOException
 	{
-		if (box.type.equals(HeifContainerTypes.BOX_METADATA))
+		if (box.type == FourCC.META)
 		{			
 			FullBox metaBox = new FullBox(reader, box);	
 //			System.out.println(HeifReader.ZERO_PADDINGS[depth] + "box[processContainer] -->" + metaBox);
@@ -44,35 +48,45 @@ public class HeifBoxHandler extends HeifHandler
 //			System.out.println(HeifReader.ZERO_PADDINGS[depth] + "box[processContainer] -->" + handlerBox);
 			HeifHandler handler = handlerFactory.getHandler(handlerBox, this.metadata);
 			HeifReader.processBoxes(++depth,reader, metaBox.offset + metaBox.size, handler);
+			metaProcessed = true;
 		}
 	}
 
 	
 
 	@Override
-	public boolean shouldAcceptBox( Box box)
+	public void processBox(int depth, Box box,  RandomAccessReader reader) throws IOException
 	{
-		List<String> boxes = Arrays.asList(HeifBoxTypes.BOX_FILE_TYPE, HeifBoxTypes.BOX_HANDLER, HeifBoxTypes.BOX_HVC1);
-		return boxes.contains(box.type);
+		if (box instanceof FileTypeBox)
+		{
+			processFileType((FileTypeBox) box);
+			fileTypeProcessed = true;
+		}
 	}
 
-	
+	/**
+	 * Everything comes from ftyp and meta, except for item data that a
+	 * sequential reader has yet to reach.
+	 */
 	@Override
-	public void processBox(int depth, Box box,  RandomAccessReader reader) throws IOException
+	protected boolean isSatisfied(RandomAccessReader reader)
 	{
-		if (box.type.equals(HeifBoxTypes.BOX_FILE_TYPE))
-		{
-			processFileType(reader, box);
-		}
+		return (fileTypeProcessed || !options.isFileTypeWanted()) && (metaProcessed || !options.isMetaWanted())
+				&& !reader.hasPendingRanges();
 	}
 	
 	@Override
 	public  void processCompleted(int depth,  RandomAccessReader reader)
-			throws IOException{}
+			throws IOException
+	{
+		if (reader.hasPendingRanges())
+		{
+			directory.addError("Item data was not reached before the end of the stream");
+		}
+	}
 	
-	private void processFileType( RandomAccessReader reader,  Box box) throws IOException
+	private void processFileType(FileTypeBox fileTypeBox)
 	{
-		FileTypeBox fileTypeBox = new FileTypeBox(reader, box);
 		fileTypeBox.addMetadata(directory);
 		if (!fileTypeBox.getCompatibleBrands().contains("mif1"))
 		{
@@ -20,7 +20,7 @@ public class HeifHandlerFactory
 	{
 		String type = box.getHandlerType();
 		if (type.equals(HANDLER_PICTURE)) { return new HeifPictureHandler(
-				metadata); }
+				metadata, caller.getOptions()); }
 		return caller;
 	}
 }
\ No newline at end of file
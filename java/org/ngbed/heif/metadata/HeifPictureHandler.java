@@ -1,30 +1,37 @@
 package org.ngbed.heif.metadata;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
+import org.ngbed.heif.ExtractionOptions;
 import org.ngbed.heif.HeifHandler;
+import org.ngbed.heif.ItemDataReader;
 import org.ngbed.heif.boxes.AuxiliaryTypeProperty;
 import org.ngbed.heif.boxes.Box;
+import org.ngbed.heif.boxes.BoxParser;
 import org.ngbed.heif.boxes.ColourInformationBox;
+import org.ngbed.heif.boxes.FourCC;
 import org.ngbed.heif.boxes.ImageRotationBox;
+import org.ngbed.heif.boxes.ItemDataBox;
 import org.ngbed.heif.boxes.ImageSpatialExtentsProperty;
 import org.ngbed.heif.boxes.ItemInfoBox;
 import org.ngbed.heif.boxes.ItemInfoBox.ItemInfoEntry;
 import org.ngbed.heif.boxes.ItemLocationBox;
-import org.ngbed.heif.boxes.ItemLocationBox.Extent;
 import org.ngbed.heif.boxes.ItemLocationBox.ItemLocation;
+import org.ngbed.heif.boxes.ItemPropertyAssociationBox;
+import org.ngbed.heif.boxes.ItemPropertyContainerBox;
 import org.ngbed.heif.boxes.ItemProtectionBox;
 import org.ngbed.heif.boxes.PixelInformationBox;
 import org.ngbed.heif.boxes.PrimaryItemBox;
+import org.ngbed.heif.io.BufferWindowReader;
+import org.ngbed.heif.io.ByteRangeCallback;
 import org.ngbed.heif.io.RandomAccessReader;
+import org.ngbed.heif.io.ReaderWindowReader;
 
-import com.drew.lang.ByteArrayReader;
 import com.drew.metadata.Metadata;
 import com.drew.metadata.exif.ExifReader;
-import com.drew.metadata.heif.HeifBoxTypes;
-import com.drew.metadata.heif.HeifContainerTypes;
+import com.drew.metadata.xmp.XmpReader;
 
 public class HeifPictureHandler extends HeifHandler
 {
@@ -32,103 +39,319 @@ public class HeifPictureHandler extends HeifHandler
 	PrimaryItemBox primaryItemBox;
 	ItemInfoBox itemInfoBox;
 	ItemLocationBox itemLocationBox;
+	ItemDataBox itemDataBox;
+	ItemPropertyContainerBox itemPropertyContainerBox;
+	ItemPropertyAssociationBox itemPropertyAssociationBox;
 
 	public HeifPictureHandler(Metadata metadata) {
-		super(metadata);
+		this(metadata, null);
+	}
+
+	public HeifPictureHandler(Metadata metadata, ExtractionOptions options) {
+		super(metadata, options);
 
 		itemProtectionBox = null;
 		primaryItemBox = null;
 		itemInfoBox = null;
 		itemLocationBox = null;
+		itemDataBox = null;
+		itemPropertyContainerBox = null;
+		itemPropertyAssociationBox = null;
 	}
 
 	@Override
 	protected boolean shouldAcceptContainer(Box box)
 	{
-		return box.type.equals(HeifContainerTypes.BOX_IMAGE_PROPERTY)
-				|| box.type.equals(HeifContainerTypes.BOX_ITEM_PROPERTY);
+		return box.type == FourCC.IPRP || box.type == FourCC.IPCO;
 	}
 
 	@Override
 	protected void processContainer(int depth, Box box, RandomAccessReader reader) throws IOException
 	{
-		reader.skip(box.countBytesUnread());
+		if (box.type == FourCC.IPCO)
+		{
+			processItemProperties(box, reader);
+		}
+		// For iprp, nothing is skipped: its ipco and ipma children are picked up
+		// by the enclosing box loop
 	}
 
-	@Override
-	protected boolean shouldAcceptBox(Box box)
+	/**
+	 * Reads every property in ipco into the indexed property table. Properties
+	 * are only applied, in {@link #processCompleted}, once ipma tells which of
+	 * them belong to the primary item.
+	 */
+	private void processItemProperties(Box box, RandomAccessReader reader) throws IOException
 	{
-		List<String> boxes = Arrays.asList(HeifBoxTypes.BOX_ITEM_PROTECTION, HeifBoxTypes.BOX_PRIMARY_ITEM,
-				HeifBoxTypes.BOX_ITEM_INFO, HeifBoxTypes.BOX_ITEM_LOCATION, HeifBoxTypes.BOX_IMAGE_SPATIAL_EXTENTS,
-				HeifBoxTypes.BOX_AUXILIARY_TYPE_PROPERTY, HeifBoxTypes.BOX_IMAGE_ROTATION, HeifBoxTypes.BOX_COLOUR_INFO,
-				HeifBoxTypes.BOX_PIXEL_INFORMATION);
+		itemPropertyContainerBox = new ItemPropertyContainerBox(box);
 
-		return boxes.contains(box.type);
+		long end = box.offset + box.size;
+		while (reader.getPosition() < end)
+		{
+			Box property = new Box(reader);
+			if (property.size < property.countBytesRead || property.offset + property.size > end)
+			{
+				directory.addError(String.format("Invalid item property at offset %d", property.offset));
+				break;
+			}
+			BoxParser parser = getParser(property);
+			itemPropertyContainerBox.addProperty(parser == null ? property : parser.parse(reader, property, metadata));
+			if (reader.getPosition() > property.offset + property.size)
+			{
+				directory.addError(String.format("Item property '%s' at offset %d overruns its size of %d bytes",
+						FourCC.toString(property.type), property.offset, property.size));
+				break;
+			}
+			reader.seek(property.offset + property.size);
+		}
 	}
 
 	@Override
 	protected void processBox(int depth, Box box, RandomAccessReader reader) throws IOException
 	{
-		if (box.type.equals(HeifBoxTypes.BOX_ITEM_PROTECTION)) {
-			itemProtectionBox = new ItemProtectionBox(reader, box);
+		if (box instanceof ItemProtectionBox) {
+			itemProtectionBox = (ItemProtectionBox) box;
 		}
-		else if (box.type.equals(HeifBoxTypes.BOX_PRIMARY_ITEM)) {
-			primaryItemBox = new PrimaryItemBox(reader, box);
+		else if (box instanceof PrimaryItemBox) {
+			primaryItemBox = (PrimaryItemBox) box;
 		}
-		else if (box.type.equals(HeifBoxTypes.BOX_ITEM_INFO)) {
-			itemInfoBox = new ItemInfoBox(reader, box);
+		else if (box instanceof ItemInfoBox) {
+			itemInfoBox = (ItemInfoBox) box;
 //			System.out.println(HeifReader.ZERO_PADDINGS[depth] + itemInfoBox);
 			itemInfoBox.addMetadata(directory);
 		}
-		else if (box.type.equals(HeifBoxTypes.BOX_ITEM_LOCATION)) {
-			itemLocationBox = new ItemLocationBox(reader, box);
+		else if (box instanceof ItemLocationBox) {
+			itemLocationBox = (ItemLocationBox) box;
 //			System.out.println(HeifReader.ZERO_PADDINGS[depth] + itemLocationBox);
 		}
-		else if (box.type.equals(HeifBoxTypes.BOX_IMAGE_SPATIAL_EXTENTS)) {
-			ImageSpatialExtentsProperty imageSpatialExtentsProperty = new ImageSpatialExtentsProperty(reader, box);
-			imageSpatialExtentsProperty.addMetadata(directory);
-		}
-		else if (box.type.equals(HeifBoxTypes.BOX_AUXILIARY_TYPE_PROPERTY)) {
-			AuxiliaryTypeProperty auxiliaryTypeProperty = new AuxiliaryTypeProperty(reader, box);
-			auxiliaryTypeProperty.addMetadata(directory);
-		}
-		else if (box.type.equals(HeifBoxTypes.BOX_IMAGE_ROTATION)) {
-			ImageRotationBox imageRotationBox = new ImageRotationBox(reader, box);
-			imageRotationBox.addMetadata(directory);
+		else if (box instanceof ItemDataBox) {
+			itemDataBox = (ItemDataBox) box;
 		}
-		else if (box.type.equals(HeifBoxTypes.BOX_COLOUR_INFO)) {
-			ColourInformationBox colourInformationBox = new ColourInformationBox(reader, box, metadata);
-			colourInformationBox.addMetadata(directory);
-		}
-		else if (box.type.equals(HeifBoxTypes.BOX_PIXEL_INFORMATION)) {
-			PixelInformationBox pixelInformationBox = new PixelInformationBox(reader, box);
-			pixelInformationBox.addMetadata(directory);
+		else if (box instanceof ItemPropertyAssociationBox) {
+			itemPropertyAssociationBox = (ItemPropertyAssociationBox) box;
 		}
 	}
 
 	@Override
 	protected void processCompleted(int depth, RandomAccessReader reader) throws IOException
 	{
-		readExifMetadata(depth, reader);
+		addPrimaryItemProperties();
+		if (options.isExifItemWanted()) readExifMetadata(depth, reader);
+		if (options.isXmpItemWanted()) readXmpMetadata(reader);
+	}
+
+	private void addPrimaryItemProperties() throws IOException
+	{
+		if (primaryItemBox == null || itemPropertyContainerBox == null || itemPropertyAssociationBox == null) { return; }
+
+		for (int index : itemPropertyAssociationBox.getPropertyIndexes(primaryItemBox.getItemID()))
+		{
+			Box property = itemPropertyContainerBox.getProperty(index);
+			if (property instanceof ImageSpatialExtentsProperty) {
+				((ImageSpatialExtentsProperty) property).addMetadata(directory);
+			}
+			else if (property instanceof AuxiliaryTypeProperty) {
+				((AuxiliaryTypeProperty) property).addMetadata(directory);
+			}
+			else if (property instanceof ImageRotationBox) {
+				((ImageRotationBox) property).addMetadata(directory);
+			}
+			else if (property instanceof ColourInformationBox) {
+				((ColourInformationBox) property).addMetadata(directory);
+				if (options.isIccWanted()) ((ColourInformationBox) property).addIccMetadata(metadata);
+			}
+			else if (property instanceof PixelInformationBox) {
+				((PixelInformationBox) property).addMetadata(directory);
+			}
+		}
 	}
 
 	private void readExifMetadata(int depth, RandomAccessReader reader) throws IOException
 	{
+		if (itemInfoBox == null || itemLocationBox == null) { return; }
+
 		ItemInfoEntry exifEntry = itemInfoBox.getExifItemInfoEntry();
 		if (exifEntry == null) { return; }
 
-		ItemLocation location = itemLocationBox.getLocation((int) exifEntry.itemID);
-		Extent extent = location.extents.get(0);
-		long position = reader.getPosition();
-		reader.seek(extent.offset);
+		ItemDataReader item = locateItem(exifEntry, "Exif", reader);
+		if (item == null) { return; }
+
+		final long offset = item.getSourceOffset(0);
+		if (reader.getLength() >= 0)
+		{
+			long position = reader.getPosition();
+			processExifItem(item, offset);
+			reader.seek(position);
+		}
+		else if (item.getRunCount() == 1)
+		{
+			// Sequential sources hand the item over once the stream reaches it
+			boolean accepted = item.readBytesDeferred(0, item.getLength(), new ByteRangeCallback()
+			{
+				@Override
+				public void onBytes(long index, ByteBuffer bytes) throws IOException
+				{
+					processExifItem(bytes, offset);
+				}
+			});
+			if (!accepted)
+			{
+				directory.addError("Exif item data at offset " + offset + " could not be read from this source");
+			}
+		}
+		else
+		{
+			directory.addError("Exif item data split over " + item.getRunCount() + " ranges cannot be read from a stream");
+		}
+	}
+
+	/**
+	 * @return a reader over the item's data, or null if it has none or, with
+	 *         an error, if it cannot be located in this file
+	 */
+	private ItemDataReader locateItem(ItemInfoEntry entry, String name, RandomAccessReader reader) throws IOException
+	{
+		ItemLocation location = itemLocationBox.getLocation(entry.itemID);
+		if (location == null || location.getExtentCount() == 0) { return null; }
+
+		ItemDataReader item = ItemDataReader.create(reader, location, itemDataBox);
+		if (item == null)
+		{
+			directory.addError(String.format("%s item data cannot be located (construction method %d, data reference %d)",
+					name, location.getConstructionMethod(), location.getDataReferenceIndex()));
+		}
+		return item;
+	}
+
+	private void readXmpMetadata(RandomAccessReader reader) throws IOException
+	{
+		if (itemInfoBox == null || itemLocationBox == null) { return; }
+
+		ItemInfoEntry xmpEntry = itemInfoBox.getXmpItemInfoEntry();
+		if (xmpEntry == null) { return; }
 
-		byte[] PREAMBLE = { 0, 0, 0, 6 };
-		int EXIF_SEGMENT_PREAMBLE_OFFSET = PREAMBLE.length + ExifReader.JPEG_SEGMENT_PREAMBLE.length();
+		ItemDataReader item = locateItem(xmpEntry, "XMP", reader);
+		if (item == null) { return; }
 
-		ByteArrayReader exifReader = new ByteArrayReader(reader.getBytes(extent.length));
-		new com.drew.metadata.exif.ExifReader().extract(exifReader, this.metadata, EXIF_SEGMENT_PREAMBLE_OFFSET, null);
+		final long offset = item.getSourceOffset(0);
+		if (item.getRunCount() == 1)
+		{
+			boolean accepted = item.readBytesDeferred(0, item.getLength(), new ByteRangeCallback()
+			{
+				@Override
+				public void onBytes(long index, ByteBuffer bytes) throws IOException
+				{
+					processXmpItem(bytes);
+				}
+			});
+			if (!accepted)
+			{
+				directory.addError("XMP item data at offset " + offset + " could not be read from this source");
+			}
+		}
+		else if (reader.getLength() < 0)
+		{
+			directory.addError("XMP item data split over " + item.getRunCount() + " ranges cannot be read from a stream");
+		}
+		else
+		{
+			// The packet is parsed as a whole, so a split item is copied into one piece
+			long position = reader.getPosition();
+			processXmpItem(item.getByteBuffer(0, item.getLength()));
+			reader.seek(position);
+		}
+	}
+
+	private void processXmpItem(ByteBuffer packet) throws IOException
+	{
+		if (options.getXmpPayloadCallback() != null)
+		{
+			options.getXmpPayloadCallback().onXmpPayload(packet.duplicate());
+		}
+		if (options.isXmpWanted())
+		{
+			if (packet.hasArray())
+			{
+				new XmpReader().extract(packet.array(), packet.arrayOffset() + packet.position(), packet.remaining(),
+						metadata, null);
+			}
+			else
+			{
+				byte[] bytes = new byte[packet.remaining()];
+				packet.duplicate().get(bytes);
+				new XmpReader().extract(bytes, metadata);
+			}
+		}
+	}
+
+	private void processExifItem(ByteBuffer bytes, long offset) throws IOException
+	{
+		ByteBuffer tiffData = getTiffData(bytes);
+		if (tiffData == null)
+		{
+			directory.addError("Invalid Exif item at offset " + offset);
+			return;
+		}
+
+		if (options.getExifPayloadCallback() != null)
+		{
+			options.getExifPayloadCallback().onExifPayload(tiffData.duplicate());
+		}
+		if (options.isExifWanted())
+		{
+			new ExifReader().extract(new BufferWindowReader(tiffData), metadata, 0, null);
+		}
+	}
+
+	/**
+	 * Decodes an item in place, reading each value from wherever it lies in
+	 * the source, so that nothing is copied beyond what the reader itself
+	 * buffers. Only the payload callback needs the data in one piece, and gets
+	 * a view where the source has one.
+	 */
+	private void processExifItem(ItemDataReader item, long offset) throws IOException
+	{
+		long tiffStart = 4 + item.getUInt32(0);
+		if (tiffStart > item.getLength())
+		{
+			directory.addError("Invalid Exif item at offset " + offset);
+			return;
+		}
+
+		long tiffLength = item.getLength() - tiffStart;
+		if (tiffLength > Integer.MAX_VALUE)
+		{
+			directory.addError("Exif item at offset " + offset + " is too large: " + tiffLength + " bytes");
+			return;
+		}
+		if (options.getExifPayloadCallback() != null)
+		{
+			options.getExifPayloadCallback().onExifPayload(item.getByteBuffer(tiffStart, tiffLength));
+		}
+		if (options.isExifWanted())
+		{
+			new ExifReader().extract(new ReaderWindowReader(item, tiffStart, tiffLength), metadata, 0, null);
+		}
+	}
+
+	/**
+	 * An Exif item starts with the offset of the TIFF header, counted from the
+	 * end of that 32-bit field; it is usually 6, skipping "Exif\0\0".
+	 * <p>
+	 * ISO/IEC 23008-12:2017 Annex A
+	 *
+	 * @return a view of the item from the TIFF header on, or null if the offset
+	 *         is past the end of the item
+	 */
+	private static ByteBuffer getTiffData(ByteBuffer item)
+	{
+		if (item.remaining() < 4) return null;
 
-		reader.seek(position);
+		long headerOffset = item.duplicate().order(ByteOrder.BIG_ENDIAN).getInt(item.position()) & 0xFFFFFFFFL;
+		if (4 + headerOffset > item.remaining()) return null;
 
+		ByteBuffer tiffData = item.duplicate();
+		tiffData.position(item.position() + 4 + (int) headerOffset);
+		return tiffData.slice();
 	}
 }
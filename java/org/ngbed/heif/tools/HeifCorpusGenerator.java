@@ -0,0 +1,528 @@
+package org.ngbed.heif.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes valid HEIF container files with configurable structure, for scale and
+ * stress testing of the parser: item and extent counts, properties,
+ * <code>iloc</code> version and field sizes, sparse or 32-bit item IDs, large
+ * Exif/XMP payloads, grid images and deeply nested boxes.
+ * <p>
+ * The image items are <code>hvc1</code> items with placeholder data, so the
+ * files exercise the container only and cannot be decoded. Item 1 (or the
+ * first ID) is the primary item, unless the image is a grid: the
+ * <code>grid</code> item then follows the image items, which are its tiles,
+ * and is primary. The Exif and XMP items, when present, come last and describe
+ * the primary item through <code>cdsc</code> references.
+ */
+public class HeifCorpusGenerator
+{
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private int itemCount = 1;
+	private long firstItemID = 1;
+	private long itemIDStride = 1;
+	private int extentsPerItem = 1;
+	private int itemDataSize = 16;
+	private int propertyCount = 4;
+	private int ilocVersion = 1;
+	private int offsetSize = 4;
+	private int lengthSize = 4;
+	private int baseOffsetSize = 0;
+	private int exifSize = 0;
+	private int xmpSize = 0;
+	private int nestingDepth = 0;
+	private int gridRows = 0;
+	private int gridColumns = 0;
+	private int width = 512;
+	private int height = 512;
+
+	/**
+	 * Number of image items, including the primary item.
+	 */
+	public void setItemCount(int itemCount)
+	{
+		if (itemCount < 1) throw new IllegalArgumentException("itemCount must be at least 1.");
+		this.itemCount = itemCount;
+		gridRows = 0;
+		gridColumns = 0;
+	}
+
+	/**
+	 * Makes the primary item a <code>grid</code> of <code>rows</code> by
+	 * <code>columns</code> tiles, with one image item per tile; the tiles have
+	 * the {@link #setDimensions(int, int) dimensions} set, and the grid is as
+	 * large as all of them together.
+	 */
+	public void setGrid(int rows, int columns)
+	{
+		if (rows < 1 || rows > 256 || columns < 1 || columns > 256)
+			throw new IllegalArgumentException("Grids have from 1 to 256 rows and columns.");
+		if (rows * columns > 0xFFFF) throw new IllegalArgumentException("A grid can refer to at most 65535 tiles.");
+		this.itemCount = rows * columns;
+		this.gridRows = rows;
+		this.gridColumns = columns;
+	}
+
+	/**
+	 * Item IDs start at <code>firstItemID</code> and step by
+	 * <code>itemIDStride</code>, to produce sparse or 32-bit IDs. IDs above
+	 * 65535 need <code>iloc</code> version 2.
+	 */
+	public void setItemIDs(long firstItemID, long itemIDStride)
+	{
+		if (firstItemID < 1 || itemIDStride < 1)
+			throw new IllegalArgumentException("Item IDs and stride must be positive.");
+		this.firstItemID = firstItemID;
+		this.itemIDStride = itemIDStride;
+	}
+
+	public void setExtentsPerItem(int extentsPerItem)
+	{
+		if (extentsPerItem < 1) throw new IllegalArgumentException("extentsPerItem must be at least 1.");
+		this.extentsPerItem = extentsPerItem;
+	}
+
+	public void setItemDataSize(int itemDataSize)
+	{
+		if (itemDataSize < 0) throw new IllegalArgumentException("itemDataSize must be zero or greater.");
+		this.itemDataSize = itemDataSize;
+	}
+
+	/**
+	 * Number of properties in <code>ipco</code>, cycling through
+	 * <code>ispe</code>, <code>pixi</code>, <code>colr</code> and
+	 * <code>irot</code>. Every image item is associated with all of them, and
+	 * <code>ipma</code> counts associations in a byte, so there can be at most
+	 * 255.
+	 */
+	public void setPropertyCount(int propertyCount)
+	{
+		if (propertyCount < 0 || propertyCount > 0xFF)
+			throw new IllegalArgumentException("propertyCount must be between 0 and 255.");
+		this.propertyCount = propertyCount;
+	}
+
+	public void setIlocVersion(int ilocVersion)
+	{
+		if (ilocVersion < 0 || ilocVersion > 2) throw new IllegalArgumentException("iloc version must be 0, 1 or 2.");
+		this.ilocVersion = ilocVersion;
+	}
+
+	/**
+	 * Sizes, in bytes, of the <code>iloc</code> offset, length and base offset
+	 * fields: 4 or 8 (and 0 for the base offset).
+	 */
+	public void setFieldSizes(int offsetSize, int lengthSize, int baseOffsetSize)
+	{
+		checkFieldSize(offsetSize, false);
+		checkFieldSize(lengthSize, false);
+		checkFieldSize(baseOffsetSize, true);
+		this.offsetSize = offsetSize;
+		this.lengthSize = lengthSize;
+		this.baseOffsetSize = baseOffsetSize;
+	}
+
+	/**
+	 * Size of the Exif item payload, or 0 for no Exif item. The payload is a
+	 * valid TIFF structure padded to the requested size.
+	 */
+	public void setExifSize(int exifSize)
+	{
+		this.exifSize = exifSize;
+	}
+
+	/**
+	 * Size of the XMP (<code>application/rdf+xml</code>) item payload, or 0 for
+	 * no XMP item.
+	 */
+	public void setXmpSize(int xmpSize)
+	{
+		this.xmpSize = xmpSize;
+	}
+
+	/**
+	 * Depth of a chain of <code>iprp</code> boxes wrapping the real one inside
+	 * <code>meta</code>. Extraction walks every level of it, and a box index
+	 * stops at its depth limit.
+	 */
+	public void setNestingDepth(int nestingDepth)
+	{
+		this.nestingDepth = nestingDepth;
+	}
+
+	public void setDimensions(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+	}
+
+	public Path write(Path path) throws IOException
+	{
+		Files.write(path, generate());
+		return path;
+	}
+
+	public byte[] generate() throws IOException
+	{
+		int gridCount = gridRows > 0 ? 1 : 0;
+		int exifCount = exifSize > 0 ? 1 : 0;
+		int xmpCount = xmpSize > 0 ? 1 : 0;
+		int totalItems = itemCount + gridCount + exifCount + xmpCount;
+
+		long[] itemIDs = new long[totalItems];
+		for (int i = 0; i < totalItems; i++)
+		{
+			itemIDs[i] = firstItemID + i * itemIDStride;
+		}
+		boolean wideIDs = itemIDs[totalItems - 1] > 0xFFFF;
+		if (wideIDs && ilocVersion < 2) throw new IllegalStateException("Item IDs above 65535 need iloc version 2.");
+
+		byte[][] payloads = new byte[totalItems][];
+		for (int i = 0; i < itemCount; i++)
+		{
+			payloads[i] = new byte[itemDataSize];
+		}
+		if (gridCount > 0) payloads[itemCount] = gridPayload();
+		if (exifCount > 0) payloads[itemCount + gridCount] = exifPayload(exifSize);
+		if (xmpCount > 0) payloads[itemCount + gridCount + exifCount] = xmpPayload(xmpSize);
+
+		byte[] ftyp = box("ftyp", concat(ascii("heic"), u32(0), ascii("mif1"), ascii("heic")));
+
+		// meta has the same size whatever the data offsets, so lay it out once to
+		// find where mdat starts and then again with the real offsets
+		byte[] meta = meta(itemIDs, payloads, wideIDs, 0);
+		long dataStart = ftyp.length + meta.length + 8;
+		meta = meta(itemIDs, payloads, wideIDs, dataStart);
+
+		return concat(ftyp, meta, box("mdat", concat(payloads)));
+	}
+
+	private byte[] meta(long[] itemIDs, byte[][] payloads, boolean wideIDs, long dataStart) throws IOException
+	{
+		int gridIndex = gridRows > 0 ? itemCount : -1;
+		int metadataStart = itemCount + (gridRows > 0 ? 1 : 0);
+		int exifIndex = exifSize > 0 ? metadataStart : -1;
+		int xmpIndex = xmpSize > 0 ? metadataStart + (exifSize > 0 ? 1 : 0) : -1;
+		long primaryID = itemIDs[gridIndex != -1 ? gridIndex : 0];
+
+		byte[] hdlr = fullBox("hdlr", 0, concat(u32(0), ascii("pict"), new byte[12], new byte[] { 0 }));
+		byte[] pitm = wideIDs ? fullBox("pitm", 1, u32(primaryID)) : fullBox("pitm", 0, u16(primaryID));
+
+		ByteArrayOutputStream entries = new ByteArrayOutputStream();
+		for (int i = 0; i < itemIDs.length; i++)
+		{
+			byte[] id = wideIDs ? u32(itemIDs[i]) : u16(itemIDs[i]);
+			int version = wideIDs ? 3 : 2;
+			byte[] entry;
+			if (i == exifIndex)
+			{
+				entry = concat(id, u16(0), ascii("Exif"), cstring(""));
+			}
+			else if (i == xmpIndex)
+			{
+				entry = concat(id, u16(0), ascii("mime"), cstring(""), cstring("application/rdf+xml"));
+			}
+			else if (i == gridIndex)
+			{
+				entry = concat(id, u16(0), ascii("grid"), cstring(""));
+			}
+			else
+			{
+				entry = concat(id, u16(0), ascii("hvc1"), cstring(""));
+			}
+			entries.write(fullBox("infe", version, entry));
+		}
+		byte[] iinf = itemIDs.length > 0xFFFF
+				? fullBox("iinf", 1, concat(u32(itemIDs.length), entries.toByteArray()))
+				: fullBox("iinf", 0, concat(u16(itemIDs.length), entries.toByteArray()));
+
+		ByteArrayOutputStream references = new ByteArrayOutputStream();
+		if (gridIndex != -1)
+		{
+			// Tiles in row order, from the top left
+			ByteArrayOutputStream tiles = new ByteArrayOutputStream();
+			tiles.write(wideIDs ? u32(primaryID) : u16(primaryID));
+			tiles.write(u16(itemCount));
+			for (int i = 0; i < itemCount; i++)
+			{
+				tiles.write(wideIDs ? u32(itemIDs[i]) : u16(itemIDs[i]));
+			}
+			references.write(box("dimg", tiles.toByteArray()));
+		}
+		for (int i = metadataStart; i < itemIDs.length; i++)
+		{
+			byte[] from = wideIDs ? u32(itemIDs[i]) : u16(itemIDs[i]);
+			byte[] to = wideIDs ? u32(primaryID) : u16(primaryID);
+			references.write(box("cdsc", concat(from, u16(1), to)));
+		}
+		byte[] iref = references.size() > 0 ? fullBox("iref", wideIDs ? 1 : 0, references.toByteArray()) : new byte[0];
+
+		byte[] iprp = propertyCount > 0 || gridIndex != -1 ? iprp(itemIDs, wideIDs) : new byte[0];
+		for (int i = 0; i < nestingDepth; i++)
+		{
+			iprp = box("iprp", iprp);
+		}
+
+		return fullBox("meta", 0, concat(hdlr, pitm, iinf, iref, iprp, iloc(itemIDs, payloads, dataStart)));
+	}
+
+	private byte[] iprp(long[] itemIDs, boolean wideIDs) throws IOException
+	{
+		ByteArrayOutputStream properties = new ByteArrayOutputStream();
+		for (int i = 0; i < propertyCount; i++)
+		{
+			switch (i % 4)
+			{
+			case 0:
+				properties.write(fullBox("ispe", 0, concat(u32(width), u32(height))));
+				break;
+			case 1:
+				properties.write(fullBox("pixi", 0, new byte[] { 3, 8, 8, 8 }));
+				break;
+			case 2:
+				properties.write(box("colr", concat(ascii("nclx"), u16(1), u16(13), u16(6), new byte[] { (byte) 0x80 })));
+				break;
+			default:
+				properties.write(box("irot", new byte[] { 1 }));
+				break;
+			}
+		}
+
+		// The grid item has only an ispe of its own, with the full size
+		int gridProperty = 0;
+		if (gridRows > 0)
+		{
+			properties.write(fullBox("ispe", 0, concat(u32((long) width * gridColumns), u32((long) height * gridRows))));
+			gridProperty = propertyCount + 1;
+		}
+
+		boolean wideIndexes = Math.max(propertyCount, gridProperty) > 0x7F;
+		ByteArrayOutputStream associations = new ByteArrayOutputStream();
+		associations.write(u32(itemCount + (gridRows > 0 ? 1 : 0)));
+		for (int i = 0; i < itemCount; i++)
+		{
+			associations.write(wideIDs ? u32(itemIDs[i]) : u16(itemIDs[i]));
+			associations.write(propertyCount);
+			for (int p = 1; p <= propertyCount; p++)
+			{
+				// The essential bit is set on every property but ispe
+				int essential = p % 4 == 1 ? 0 : 1;
+				if (wideIndexes)
+				{
+					associations.write(u16(essential << 15 | p));
+				}
+				else
+				{
+					associations.write(essential << 7 | p);
+				}
+			}
+		}
+		if (gridRows > 0)
+		{
+			associations.write(wideIDs ? u32(itemIDs[itemCount]) : u16(itemIDs[itemCount]));
+			associations.write(1);
+			associations.write(wideIndexes ? u16(gridProperty) : new byte[] { (byte) gridProperty });
+		}
+		byte[] ipma = box("ipma", concat(new byte[] { (byte) (wideIDs ? 1 : 0), 0, 0, (byte) (wideIndexes ? 1 : 0) },
+				associations.toByteArray()));
+
+		return box("iprp", concat(box("ipco", properties.toByteArray()), ipma));
+	}
+
+	private byte[] iloc(long[] itemIDs, byte[][] payloads, long dataStart) throws IOException
+	{
+		ByteArrayOutputStream locations = new ByteArrayOutputStream();
+		locations.write(offsetSize << 4 | lengthSize);
+		locations.write(baseOffsetSize << 4);
+		locations.write(ilocVersion == 2 ? u32(itemIDs.length) : u16(itemIDs.length));
+
+		long baseOffset = baseOffsetSize > 0 ? dataStart : 0;
+		long dataOffset = dataStart;
+		for (int i = 0; i < itemIDs.length; i++)
+		{
+			locations.write(ilocVersion == 2 ? u32(itemIDs[i]) : u16(itemIDs[i]));
+			if (ilocVersion > 0) locations.write(u16(0)); // construction method 0, file offsets
+			locations.write(u16(0)); // data reference index
+			locations.write(sized(baseOffset, baseOffsetSize));
+
+			// Non-image items are stored in a single extent
+			int extentCount = i < itemCount ? Math.min(extentsPerItem, Math.max(1, payloads[i].length)) : 1;
+			locations.write(u16(extentCount));
+			int remaining = payloads[i].length;
+			for (int e = 0; e < extentCount; e++)
+			{
+				int extentLength = remaining / (extentCount - e);
+				locations.write(sized(dataOffset - baseOffset, offsetSize));
+				locations.write(sized(extentLength, lengthSize));
+				dataOffset += extentLength;
+				remaining -= extentLength;
+			}
+		}
+		return fullBox("iloc", ilocVersion, locations.toByteArray());
+	}
+
+	/**
+	 * ImageGrid, ISO/IEC 23008-12:2017 6.6.2.3.2, with 32-bit output sizes
+	 * only where 16 bits are not enough.
+	 */
+	private byte[] gridPayload() throws IOException
+	{
+		long outputWidth = (long) width * gridColumns;
+		long outputHeight = (long) height * gridRows;
+		boolean wideSizes = outputWidth > 0xFFFF || outputHeight > 0xFFFF;
+
+		byte[] header = new byte[] { 0, (byte) (wideSizes ? 1 : 0), (byte) (gridRows - 1), (byte) (gridColumns - 1) };
+		return wideSizes ? concat(header, u32(outputWidth), u32(outputHeight))
+				: concat(header, u16(outputWidth), u16(outputHeight));
+	}
+
+	private static byte[] exifPayload(int size) throws IOException
+	{
+		byte[] make = cstring("HeifCorpusGenerator");
+		byte[] dateTime = cstring("2020:01:01 00:00:00");
+		int valuesOffset = 8 + 2 + 2 * 12 + 4;
+
+		ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+		tiff.write(ascii("MM"));
+		tiff.write(u16(0x2A));
+		tiff.write(u32(8));
+		tiff.write(u16(2));
+		tiff.write(concat(u16(0x010F), u16(2), u32(make.length), u32(valuesOffset)));
+		tiff.write(concat(u16(0x0132), u16(2), u32(dateTime.length), u32(valuesOffset + make.length)));
+		tiff.write(u32(0));
+		tiff.write(make);
+		tiff.write(dateTime);
+
+		// Offset to the TIFF header, past the "Exif\0\0" marker
+		byte[] header = concat(u32(6), ascii("Exif"), new byte[2], tiff.toByteArray());
+		byte[] payload = new byte[Math.max(size, header.length)];
+		System.arraycopy(header, 0, payload, 0, header.length);
+		return payload;
+	}
+
+	private static byte[] xmpPayload(int size) throws IOException
+	{
+		String open = "<?xpacket begin=\"\" id=\"W5M0MpCehiHzreSzNTczkc9d\"?>"
+				+ "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\"><rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">"
+				+ "<rdf:Description rdf:about=\"\" xmlns:xmp=\"http://ns.adobe.com/xap/1.0/\""
+				+ " xmp:CreatorTool=\"HeifCorpusGenerator\"/></rdf:RDF></x:xmpmeta>";
+		String close = "<?xpacket end=\"w\"?>";
+
+		StringBuilder packet = new StringBuilder(open);
+		while (packet.length() + close.length() < size)
+		{
+			packet.append(' ');
+		}
+		packet.append(close);
+		return ascii(packet.toString());
+	}
+
+	private static void checkFieldSize(int size, boolean allowZero)
+	{
+		if (size != 4 && size != 8 && !(allowZero && size == 0))
+			throw new IllegalArgumentException("Field sizes must be 4 or 8 bytes.");
+	}
+
+	private static byte[] box(String type, byte[] payload) throws IOException
+	{
+		return concat(u32(8 + payload.length), ascii(type), payload);
+	}
+
+	private static byte[] fullBox(String type, int version, byte[] payload) throws IOException
+	{
+		return box(type, concat(new byte[] { (byte) version, 0, 0, 0 }, payload));
+	}
+
+	private static byte[] ascii(String value)
+	{
+		return value.getBytes(ASCII);
+	}
+
+	private static byte[] cstring(String value) throws IOException
+	{
+		return concat(ascii(value), new byte[1]);
+	}
+
+	private static byte[] u16(long value)
+	{
+		return sized(value, 2);
+	}
+
+	private static byte[] u32(long value)
+	{
+		return sized(value, 4);
+	}
+
+	private static byte[] sized(long value, int size)
+	{
+		byte[] bytes = new byte[size];
+		for (int i = size - 1; i >= 0; i--)
+		{
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+		return bytes;
+	}
+
+	private static byte[] concat(byte[]... parts) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (byte[] part : parts)
+		{
+			bytes.write(part);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes a standard corpus of variants into the given directory.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		File directory = new File(args.length > 0 ? args[0] : "corpus");
+		if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+
+		for (int version = 0; version <= 2; version++)
+		{
+			for (int fieldSize : new int[] { 4, 8 })
+			{
+				HeifCorpusGenerator generator = new HeifCorpusGenerator();
+				generator.setItemCount(500);
+				generator.setIlocVersion(version);
+				generator.setFieldSizes(fieldSize, fieldSize, 0);
+				generator.setExifSize(4096);
+				generator.write(new File(directory, "burst_iloc" + version + "_" + fieldSize + ".heic").toPath());
+			}
+		}
+
+		HeifCorpusGenerator grid = new HeifCorpusGenerator();
+		grid.setGrid(7, 7);
+		grid.setExtentsPerItem(4);
+		grid.setItemDataSize(4096);
+		grid.write(new File(directory, "grid_7x7.heic").toPath());
+
+		HeifCorpusGenerator wide = new HeifCorpusGenerator();
+		wide.setItemCount(200);
+		wide.setIlocVersion(2);
+		wide.setItemIDs(0x10000, 977);
+		wide.setFieldSizes(8, 8, 8);
+		wide.setExifSize(1024);
+		wide.write(new File(directory, "sparse_32bit_ids.heic").toPath());
+
+		HeifCorpusGenerator large = new HeifCorpusGenerator();
+		large.setExifSize(256 * 1024);
+		large.setXmpSize(128 * 1024);
+		large.write(new File(directory, "large_exif_xmp.heic").toPath());
+
+		HeifCorpusGenerator deep = new HeifCorpusGenerator();
+		deep.setNestingDepth(256);
+		deep.setPropertyCount(200);
+		deep.write(new File(directory, "deep_nesting.heic").toPath());
+	}
+}